@@ -1,3 +1,6 @@
+-- Reference dump only, the schema is owned by the Flyway migrations in src/main/resources/db/migration.
+-- It is the schema of V1__init.sql, a database made from it is baselined there and upgraded by the later migrations
+
 -- MySQL dump 10.13  Distrib 8.0.35, for Win64 (x86_64)
 --
 -- Host: localhost    Database: belajar_spring_restful_api
@@ -0,0 +1,78 @@
+package chandraprasetyo.restful.cache;
+
+import chandraprasetyo.restful.model.SearchContactRequest;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Total number of contacts matching a search, per user and filter, so paging through the results
+ * runs the count query once instead of on every page.
+ * <p>
+ * Every entry of a user is dropped when one of their contacts is created, updated or deleted. The
+ * {@code contact.count-cache.ttl} bounds how stale a count can get when contacts change some other way.
+ * <p>
+ * Entries are keyed with a generation of the user. Dropping the generation makes all of them unreachable
+ * at once without scanning the cache, they are evicted like any unused entry.
+ */
+@Component
+public class ContactCountCache {
+
+    private final Cache<Key, Long> cache;
+
+    private final Cache<String, Long> generations;
+
+    //a generation is never given twice, an entry of a dropped one can not come back
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ContactCountCache(@Value("${contact.count-cache.maximum-size:10000}") long maximumSize,
+                             @Value("${contact.count-cache.ttl:60000}") long ttl,
+                             MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMillis(ttl))
+                .recordStats()
+                .build();
+        this.generations = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "contact-count");
+    }
+
+    public long get(String username, SearchContactRequest request, LongSupplier count) {
+        long generation = generations.get(username, ignored -> sequence.incrementAndGet());
+        Key key = new Key(username, generation, request.getName(), request.getEmail(), request.getPhone());
+        return cache.get(key, ignored -> count.getAsLong());
+    }
+
+    //after commit, a count running before that would put the old number back
+    public void invalidateUserAfterCommit(String username) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidateUser(username);
+            }
+        });
+    }
+
+    public void invalidateUser(String username) {
+        generations.invalidate(username);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        generations.invalidateAll();
+    }
+
+    private record Key(String username, long generation, String name, String email, String phone) {
+    }
+}
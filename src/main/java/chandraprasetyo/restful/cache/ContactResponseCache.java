@@ -0,0 +1,163 @@
+package chandraprasetyo.restful.cache;
+
+import chandraprasetyo.restful.model.AddressResponse;
+import chandraprasetyo.restful.model.ContactResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of the responses of contact get, address get and address list, keyed by
+ * (username, contactId) and (username, contactId, addressId), so hot contacts are answered without
+ * touching the database or the persistence context.
+ * <p>
+ * Cached responses are shared between requests and must never be modified, copy them instead.
+ * Changes made through the services are applied after commit: an update puts the new response, a delete
+ * drops it, any address change drops the address list of the contact. Eviction is Caffeine's W-TinyLFU,
+ * {@code contact.response-cache.ttl} bounds how stale an entry can get when rows change some other way.
+ * Address responses are keyed with a generation of their contact, dropping every address of a contact drops
+ * the generation instead of scanning the cache, the old entries are evicted like any unused entry.
+ * Published as {@code cache.*{cache=contact-response|address-response|address-list-response}}.
+ */
+@Component
+public class ContactResponseCache {
+
+    private final boolean enabled;
+
+    private final Cache<ContactKey, ContactResponse> contacts;
+
+    private final Cache<AddressKey, AddressResponse> addresses;
+
+    private final Cache<ContactKey, List<AddressResponse>> addressLists;
+
+    private final Cache<ContactKey, Long> generations;
+
+    //a generation is never given twice, an entry of a dropped one can not come back
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ContactResponseCache(@Value("${contact.response-cache.enabled:true}") boolean enabled,
+                                @Value("${contact.response-cache.maximum-size:100000}") long maximumSize,
+                                @Value("${contact.response-cache.ttl:600000}") long ttl,
+                                MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.contacts = newCache(maximumSize, ttl);
+        this.addresses = newCache(maximumSize, ttl);
+        this.addressLists = newCache(maximumSize, ttl);
+        this.generations = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, contacts, "contact-response");
+        CaffeineCacheMetrics.monitor(meterRegistry, addresses, "address-response");
+        CaffeineCacheMetrics.monitor(meterRegistry, addressLists, "address-list-response");
+    }
+
+    private static <K, V> Cache<K, V> newCache(long maximumSize, long ttl) {
+        return Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMillis(ttl))
+                .recordStats()
+                .build();
+    }
+
+    //empty results are not cached, the loader runs again next time
+    public Optional<ContactResponse> getContact(String username, String contactId, Supplier<Optional<ContactResponse>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return Optional.ofNullable(contacts.get(new ContactKey(username, contactId), key -> loader.get().orElse(null)));
+    }
+
+    public Optional<AddressResponse> getAddress(String username, String contactId, String addressId,
+                                                Supplier<Optional<AddressResponse>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return Optional.ofNullable(addresses.get(addressKey(username, contactId, addressId), key -> loader.get().orElse(null)));
+    }
+
+    public List<AddressResponse> getAddresses(String username, String contactId, Supplier<List<AddressResponse>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return addressLists.get(new ContactKey(username, contactId), key -> List.copyOf(loader.get()));
+    }
+
+    public void putContactAfterCommit(String username, ContactResponse contact) {
+        afterCommit(() -> contacts.put(new ContactKey(username, contact.getId()), contact));
+    }
+
+    //the contact and everything cached under it
+    public void invalidateContactAfterCommit(String username, String contactId) {
+        afterCommit(() -> {
+            contacts.invalidate(new ContactKey(username, contactId));
+            invalidateAddresses(username, contactId);
+        });
+    }
+
+    //every address of the contact, for changes touching many of them
+    public void invalidateAddressesAfterCommit(String username, String contactId) {
+        afterCommit(() -> invalidateAddresses(username, contactId));
+    }
+
+    private void invalidateAddresses(String username, String contactId) {
+        ContactKey contactKey = new ContactKey(username, contactId);
+        addressLists.invalidate(contactKey);
+        generations.invalidate(contactKey);
+    }
+
+    private AddressKey addressKey(String username, String contactId, String addressId) {
+        long generation = generations.get(new ContactKey(username, contactId), ignored -> sequence.incrementAndGet());
+        return new AddressKey(username, contactId, generation, addressId);
+    }
+
+    public void putAddressAfterCommit(String username, String contactId, AddressResponse address) {
+        afterCommit(() -> {
+            addresses.put(addressKey(username, contactId, address.getId()), address);
+            addressLists.invalidate(new ContactKey(username, contactId));
+        });
+    }
+
+    public void invalidateAddressAfterCommit(String username, String contactId, String addressId) {
+        afterCommit(() -> {
+            addresses.invalidate(addressKey(username, contactId, addressId));
+            addressLists.invalidate(new ContactKey(username, contactId));
+        });
+    }
+
+    //after commit, a read running before that would put the old response back
+    private void afterCommit(Runnable change) {
+        if (!enabled) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    public void invalidateAll() {
+        contacts.invalidateAll();
+        addresses.invalidateAll();
+        addressLists.invalidateAll();
+        generations.invalidateAll();
+    }
+
+    private record ContactKey(String username, String contactId) {
+    }
+
+    private record AddressKey(String username, String contactId, long generation, String addressId) {
+    }
+}
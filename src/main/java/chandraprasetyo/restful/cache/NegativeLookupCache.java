@@ -0,0 +1,77 @@
+package chandraprasetyo.restful.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Short-lived memory of tokens and usernames the database did not know, so the same garbage
+ * X-API-TOKEN or unknown username sent again and again is answered without a query.
+ * <p>
+ * Entries live {@code auth.negative-cache.ttl} ms. Tokens are random, a token once unknown or expired
+ * never becomes valid, but a username becomes known on register, so register must call
+ * {@link #forgetUsername(String)}. Published as {@code cache.*{cache=unknown-token|unknown-username}}.
+ */
+@Component
+public class NegativeLookupCache {
+
+    private final boolean enabled;
+
+    private final Cache<String, Boolean> unknownTokens;
+
+    private final Cache<String, Boolean> unknownUsernames;
+
+    public NegativeLookupCache(@Value("${auth.negative-cache.enabled:true}") boolean enabled,
+                               @Value("${auth.negative-cache.maximum-size:100000}") long maximumSize,
+                               @Value("${auth.negative-cache.ttl:30000}") long ttl,
+                               MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.unknownTokens = newCache(maximumSize, ttl);
+        this.unknownUsernames = newCache(maximumSize, ttl);
+        CaffeineCacheMetrics.monitor(meterRegistry, unknownTokens, "unknown-token");
+        CaffeineCacheMetrics.monitor(meterRegistry, unknownUsernames, "unknown-username");
+    }
+
+    private static Cache<String, Boolean> newCache(long maximumSize, long ttl) {
+        return Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMillis(ttl))
+                .recordStats()
+                .build();
+    }
+
+    public boolean isUnknownToken(String token) {
+        return enabled && unknownTokens.getIfPresent(token) != null;
+    }
+
+    public void unknownToken(String token) {
+        if (enabled) {
+            unknownTokens.put(token, Boolean.TRUE);
+        }
+    }
+
+    public boolean isUnknownUsername(String username) {
+        return enabled && unknownUsernames.getIfPresent(username) != null;
+    }
+
+    public void unknownUsername(String username) {
+        if (enabled) {
+            unknownUsernames.put(username, Boolean.TRUE);
+        }
+    }
+
+    //username just registered
+    public void forgetUsername(String username) {
+        unknownUsernames.invalidate(username);
+    }
+
+    public void invalidateAll() {
+        unknownTokens.invalidateAll();
+        unknownUsernames.invalidateAll();
+    }
+}
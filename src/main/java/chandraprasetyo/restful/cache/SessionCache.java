@@ -0,0 +1,92 @@
+package chandraprasetyo.restful.cache;
+
+import chandraprasetyo.restful.entity.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory cache of authenticated sessions keyed by X-API-TOKEN, so every request
+ * does not need a database round trip to resolve the current {@link User}.
+ * <p>
+ * An entry lives at most {@code auth.session-cache.ttl} ms and never longer than the
+ * expiry time of the token itself. Hit/miss/eviction counters are published to the
+ * meter registry as {@code cache.*{cache=session}}.
+ */
+@Component
+public class SessionCache {
+
+    private final Cache<String, Entry> cache;
+
+    public SessionCache(@Value("${auth.session-cache.maximum-size:10000}") long maximumSize,
+                        @Value("${auth.session-cache.ttl:300000}") long ttl,
+                        MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new EntryExpiry(TimeUnit.MILLISECONDS.toNanos(ttl)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "session");
+    }
+
+    /**
+     * @return a copy of the cached user, or null when the token is not cached
+     */
+    public User get(String token) {
+        Entry entry = cache.getIfPresent(token);
+        return entry == null ? null : copy(entry.user());
+    }
+
+    public void put(String token, User user, long expiredAt) {
+        cache.put(token, new Entry(copy(user), expiredAt));
+    }
+
+    public void invalidate(String token) {
+        if (token != null) {
+            cache.invalidate(token);
+        }
+    }
+
+    //every session of the user, a user can be logged in with more than one token
+    public void invalidateUser(String username) {
+        cache.asMap().values().removeIf(entry -> entry.user().getUsername().equals(username));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    //callers get their own instance, so a handler changing the user never touches the cached one
+    private User copy(User user) {
+        return new User(user.getUsername(), user.getPassword(), user.getName(),
+                user.getToken(), user.getTokenExpiredAt(), null);
+    }
+
+    private record Entry(User user, long expiredAt) {
+    }
+
+    private record EntryExpiry(long ttlNanos) implements Expiry<String, Entry> {
+
+        @Override
+        public long expireAfterCreate(String token, Entry entry, long currentTime) {
+            long untilTokenExpired = TimeUnit.MILLISECONDS.toNanos(entry.expiredAt() - System.currentTimeMillis());
+            return Math.max(0, Math.min(ttlNanos, untilTokenExpired));
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(token, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String token, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
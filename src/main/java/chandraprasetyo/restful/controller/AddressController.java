@@ -2,16 +2,22 @@ package chandraprasetyo.restful.controller;
 
 import chandraprasetyo.restful.entity.Contact;
 import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.id.IdBytesType;
 import chandraprasetyo.restful.model.AddressResponse;
+import chandraprasetyo.restful.model.BulkItemResponse;
 import chandraprasetyo.restful.model.CreateAddressRequest;
 import chandraprasetyo.restful.model.UpdateAddressRequest;
+import chandraprasetyo.restful.model.UpsertAddressRequest;
 import chandraprasetyo.restful.model.WebResponse;
 import chandraprasetyo.restful.service.AddressService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
+import java.util.Objects;
 
 @RestController
 public class AddressController {
@@ -25,19 +31,39 @@ public class AddressController {
     public WebResponse<AddressResponse> create(User user,
                                                @RequestBody CreateAddressRequest request,
                                                @PathVariable("contactId") String contactId){
-        request.setContactId(contactId);
+        //ids are stored lower case, the case of the path does not matter
+        request.setContactId(IdBytesType.normalize(contactId));
         AddressResponse addressResponse = addressService.create(user, request);
         return WebResponse.<AddressResponse>builder()
                 .data(addressResponse)
                 .build();
     }
 
+    @PostMapping(path = "/api/contacts/{contactId}/addresses/bulk",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    public WebResponse<List<BulkItemResponse>> upsertAll(User user,
+                                                         @RequestBody List<UpsertAddressRequest> requests,
+                                                         @PathVariable("contactId") String contactId){
+        requests.stream()
+                .filter(Objects::nonNull)
+                .forEach(request -> request.setId(IdBytesType.normalize(request.getId())));
+        List<BulkItemResponse> results = addressService.upsertAll(user, IdBytesType.normalize(contactId), requests);
+        return WebResponse.<List<BulkItemResponse>>builder()
+                .data(results)
+                .build();
+    }
+
     @GetMapping(path = "/api/contacts/{contactId}/addresses/{addressId}",
             produces = MediaType.APPLICATION_JSON_VALUE)
     public WebResponse<AddressResponse> get(User user,
                                             @PathVariable("contactId") String contactId,
-                                            @PathVariable("addressId") String addressId){
-        AddressResponse addressResponse = addressService.get(user, contactId, addressId);
+                                            @PathVariable("addressId") String addressId,
+                                            WebRequest webRequest){
+        AddressResponse addressResponse = addressService.get(user, IdBytesType.normalize(contactId), IdBytesType.normalize(addressId));
+        if (webRequest.checkNotModified(ResponseETag.of(addressResponse))) {
+            return null;
+        }
         return WebResponse.<AddressResponse>builder()
                 .data(addressResponse)
                 .build();
@@ -49,9 +75,12 @@ public class AddressController {
     public WebResponse<AddressResponse> update(User user,
                                                @RequestBody UpdateAddressRequest request,
                                                @PathVariable("contactId") String contactId,
-                                               @PathVariable("addressId") String addressId){
-        request.setContactId(contactId);
-        request.setAddressId(addressId);
+                                               @PathVariable("addressId") String addressId,
+                                               @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        request.setContactId(IdBytesType.normalize(contactId));
+        request.setAddressId(IdBytesType.normalize(addressId));
+        //412 when the address has another version by now
+        request.setVersion(ResponseETag.version(ifMatch));
         AddressResponse addressResponse = addressService.update(user, request);
         return WebResponse.<AddressResponse>builder()
                 .data(addressResponse)
@@ -63,7 +92,7 @@ public class AddressController {
     public WebResponse<String> delete(User user,
                                       @PathVariable("contactId") String contactId,
                                       @PathVariable("addressId") String addressId){
-        addressService.delete(user, contactId, addressId);
+        addressService.delete(user, IdBytesType.normalize(contactId), IdBytesType.normalize(addressId));
         return WebResponse.<String>builder()
                 .data("OK")
                 .build();
@@ -72,8 +101,12 @@ public class AddressController {
     @GetMapping(path = "/api/contacts/{contactId}/addresses",
             produces = MediaType.APPLICATION_JSON_VALUE)
     public WebResponse<List<AddressResponse>> list(User user,
-                                                      @PathVariable("contactId") String contactId){
-        List<AddressResponse> addressResponses = addressService.list(user, contactId);
+                                                      @PathVariable("contactId") String contactId,
+                                                      WebRequest webRequest){
+        List<AddressResponse> addressResponses = addressService.list(user, IdBytesType.normalize(contactId));
+        if (webRequest.checkNotModified(ResponseETag.of(addressResponses))) {
+            return null;
+        }
         return WebResponse.<List<AddressResponse>>builder()
                 .data(addressResponses)
                 .build();
@@ -5,11 +5,13 @@ import chandraprasetyo.restful.model.LoginUserRequest;
 import chandraprasetyo.restful.model.TokenResponse;
 import chandraprasetyo.restful.model.WebResponse;
 import chandraprasetyo.restful.service.AuthService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -23,15 +25,16 @@ public class AuthController {
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public WebResponse<TokenResponse> login(@RequestBody LoginUserRequest request){
+    public WebResponse<TokenResponse> login(@RequestBody LoginUserRequest request, HttpServletRequest servletRequest){
+        request.setRemoteAddress(servletRequest.getRemoteAddr());
         TokenResponse tokenResponse = authService.login(request);
         return WebResponse.<TokenResponse>builder().data(tokenResponse).build();
     }
 
     @DeleteMapping(path = "api/auth/logout",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public WebResponse<String> logout(User user){
-        authService.logout(user);
+    public WebResponse<String> logout(User user, @RequestHeader(value = "X-API-TOKEN", required = false) String token){
+        authService.logout(user, token);
         return WebResponse.<String>builder().data("OK").build();
     }
 
@@ -1,14 +1,38 @@
 package chandraprasetyo.restful.controller;
 
 import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.id.IdBytesType;
 import chandraprasetyo.restful.model.*;
+import chandraprasetyo.restful.service.ContactCursor;
 import chandraprasetyo.restful.service.ContactService;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 @RestController
 public class ContactController {
@@ -16,6 +40,9 @@ public class ContactController {
     @Autowired
     private ContactService contactService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @PostMapping(path = "/api/contacts",
                 consumes = MediaType.APPLICATION_JSON_VALUE,
                 produces = MediaType.APPLICATION_JSON_VALUE)
@@ -26,12 +53,60 @@ public class ContactController {
                 .build();
     }
 
+    //a JSON array of CreateContactRequest, read element by element like the NDJSON body
+    @PostMapping(path = "/api/contacts/bulk",
+                consumes = MediaType.APPLICATION_JSON_VALUE,
+                produces = MediaType.APPLICATION_JSON_VALUE)
+    public WebResponse<List<BulkItemResponse>> createAll(User user, HttpServletRequest servletRequest) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(servletRequest.getInputStream())) {
+            List<BulkItemResponse> results = contactService.createAll(user, new JsonArrayIterator(parser));
+            return WebResponse.<List<BulkItemResponse>>builder()
+                    .data(results)
+                    .build();
+        }
+    }
+
+    //one CreateContactRequest per line, read while importing instead of all at once.
+    //a line that is not a valid request gets an error entry like an invalid item, the other lines still count
+    @PostMapping(path = "/api/contacts/bulk",
+                consumes = MediaType.APPLICATION_NDJSON_VALUE,
+                produces = MediaType.APPLICATION_JSON_VALUE)
+    public WebResponse<List<BulkItemResponse>> createAllNdjson(User user, HttpServletRequest servletRequest) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(servletRequest.getInputStream(), StandardCharsets.UTF_8))) {
+            List<BulkItemResponse> results = contactService.createAll(user, new NdjsonIterator(reader));
+            return WebResponse.<List<BulkItemResponse>>builder()
+                    .data(results)
+                    .build();
+        }
+    }
+
+    //streamed while read from the database, fine for very large contact books
+    @GetMapping(path = "/api/contacts/export",
+                produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(User user,
+                                                        @RequestParam(value = "addresses", required = false, defaultValue = "false") boolean addresses){
+        StreamingResponseBody body = outputStream -> contactService.export(user, addresses, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @GetMapping(
             path = "/api/contacts/{contactId}",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public WebResponse<ContactResponse> get(User user, @PathVariable("contactId") String contactId){
-        ContactResponse contactResponse = contactService.get(user, contactId);
+    public WebResponse<ContactResponse> get(User user, @PathVariable("contactId") String contactId,
+                                            @RequestParam(value = "embed", required = false) String embed,
+                                            WebRequest webRequest){
+        //ids are stored lower case, the case of the path does not matter
+        ContactResponse contactResponse = contactService.get(user, IdBytesType.normalize(contactId));
+        if (embedAddresses(embed)) {
+            contactResponse = contactService.withAddresses(List.of(contactResponse)).get(0);
+        }
+        //304 when the client has this version already, nothing is serialized
+        if (webRequest.checkNotModified(ResponseETag.of(contactResponse))) {
+            return null;
+        }
         return WebResponse.<ContactResponse>builder()
                 .data(contactResponse)
                 .build();
@@ -44,7 +119,7 @@ public class ContactController {
                                                @RequestBody UpdateContactRequest request,
                                                @PathVariable("contactId") String contactId) {
 
-        request.setId(contactId);
+        request.setId(IdBytesType.normalize(contactId));
 
         ContactResponse contactResponse = contactService.update(user, request);
         return WebResponse.<ContactResponse>builder()
@@ -57,7 +132,7 @@ public class ContactController {
             produces = MediaType.APPLICATION_JSON_VALUE
     )
     public WebResponse<String> delete(User user, @PathVariable("contactId") String contactId){
-        contactService.delete(user, contactId);
+        contactService.delete(user, IdBytesType.normalize(contactId));
         return WebResponse.<String>builder()
                 .data("OK")
                 .build();
@@ -70,7 +145,12 @@ public class ContactController {
                                                      @RequestParam(value = "email", required = false) String email,
                                                      @RequestParam(value = "phone", required = false) String phone,
                                                      @RequestParam(value = "page", required = false, defaultValue = "0") Integer page,
-                                                     @RequestParam(value = "size ", required = false, defaultValue = "10") Integer size){
+                                                     @RequestParam(value = "size ", required = false, defaultValue = "10") Integer size,
+                                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                                     @RequestParam(value = "count", required = false, defaultValue = "true") boolean count,
+                                                     @RequestParam(value = "embed", required = false) String embed){
+
+        boolean addresses = embedAddresses(embed);
 
         SearchContactRequest request = SearchContactRequest.builder()
                 .page(page)
@@ -78,18 +158,175 @@ public class ContactController {
                 .name(name)
                 .email(email)
                 .phone(phone)
+                .cursor(cursor)
                 .build();
 
+        //cursor paging, cost does not grow with the depth of the page
+        if (cursor != null){
+            Window<ContactResponse> window = contactService.scroll(user, request);
+            //from the position, not the last contact, the service may have skipped deleted ones after it
+            String nextCursor = window.hasNext() && !window.isEmpty()
+                    ? ContactCursor.encode((String) ((KeysetScrollPosition) window.positionAt(window.size() - 1)).getKeys().get("id"))
+                    : null;
+            return WebResponse.<List<ContactResponse>>builder()
+                    .data(addresses ? contactService.withAddresses(window.getContent()) : window.getContent())
+                    .paging(PagingResponse.builder()
+                            .size(size)
+                            .nextCursor(nextCursor)
+                            .build())
+                    .build();
+        }
+
+        //no total, only tells if there is a next page
+        if (!count){
+            Slice<ContactResponse> contactResponses = contactService.slice(user, request);
+            return WebResponse.<List<ContactResponse>>builder()
+                    .data(addresses ? contactService.withAddresses(contactResponses.getContent()) : contactResponses.getContent())
+                    .paging(PagingResponse.builder()
+                            .currentPage(contactResponses.getNumber())
+                            .size(contactResponses.getSize())
+                            .hasNext(contactResponses.hasNext())
+                            .build())
+                    .build();
+        }
+
         Page<ContactResponse> contactResponses = contactService.search(user, request);
         return WebResponse.<List<ContactResponse>>builder()
-                .data(contactResponses.getContent())
+                .data(addresses ? contactService.withAddresses(contactResponses.getContent()) : contactResponses.getContent())
                 .paging(PagingResponse.builder()
                         .currentPage(contactResponses.getNumber())
                         .totalPage(contactResponses.getTotalPages())
                         .size(contactResponses.getSize())
-                        //.totalElements((int) contactResponses.getTotalElements())
+                        .totalElements((int) contactResponses.getTotalElements())
+                        .hasNext(contactResponses.hasNext())
                         .build())
                 .build();
     }
 
+    //embed=addresses puts the addresses inside every contact
+    private static boolean embedAddresses(String embed) {
+        if (embed == null) {
+            return false;
+        }
+        if (!embed.equals("addresses")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown embed " + embed);
+        }
+        return true;
+    }
+
+    //an element that does not map to a request throws RuntimeJsonMappingException and reading goes on after it.
+    //after broken JSON the end of the element is unknown, that element gets the error and nothing after it is read
+    private class JsonArrayIterator implements Iterator<CreateContactRequest> {
+
+        private final JsonParser parser;
+
+        //parser is on the start of the next element
+        private boolean ready;
+
+        private boolean done;
+
+        //broken JSON found by hasNext(), thrown by the next call of next()
+        private String error;
+
+        private JsonArrayIterator(JsonParser parser) throws IOException {
+            this.parser = parser;
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request body must be a JSON array");
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (done) {
+                return error != null;
+            }
+            if (ready) {
+                return true;
+            }
+            try {
+                JsonToken token = parser.nextToken();
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    done = true;
+                    return false;
+                }
+                ready = true;
+                return true;
+            } catch (JsonProcessingException e) {
+                done = true;
+                error = e.getOriginalMessage();
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public CreateContactRequest next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (error != null) {
+                String current = error;
+                error = null;
+                throw new RuntimeJsonMappingException(current + ", items from here on are ignored");
+            }
+            ready = false;
+            JsonNode node;
+            try {
+                //only this element is held in memory
+                node = parser.readValueAsTree();
+            } catch (JsonProcessingException e) {
+                done = true;
+                throw new RuntimeJsonMappingException(e.getOriginalMessage() + ", items from here on are ignored");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            try {
+                return objectMapper.treeToValue(node, CreateContactRequest.class);
+            } catch (JsonProcessingException e) {
+                throw new RuntimeJsonMappingException(e.getOriginalMessage());
+            }
+        }
+    }
+
+    //blank lines are skipped, next() throws RuntimeJsonMappingException for a broken line and reading goes on after it
+    private class NdjsonIterator implements Iterator<CreateContactRequest> {
+
+        private final BufferedReader reader;
+
+        private String line;
+
+        private NdjsonIterator(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (line == null || line.isBlank()) {
+                    line = reader.readLine();
+                    if (line == null) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public CreateContactRequest next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String current = line;
+            line = null;
+            try {
+                return objectMapper.readValue(current, CreateContactRequest.class);
+            } catch (JsonProcessingException e) {
+                throw new RuntimeJsonMappingException(e.getOriginalMessage());
+            }
+        }
+    }
 }
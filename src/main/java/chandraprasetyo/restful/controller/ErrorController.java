@@ -4,6 +4,7 @@ import chandraprasetyo.restful.model.WebResponse;
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.server.ResponseStatusException;
@@ -24,4 +25,11 @@ public class ErrorController {
                 .body(WebResponse.<String>builder().errors(exception.getReason()).build());
     }
 
+    //row changed by another request between read and write
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<WebResponse<String>> optimisticLockingFailure(ObjectOptimisticLockingFailureException exception){
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(WebResponse.<String>builder().errors("Data was changed by another request, please try again").build());
+    }
+
 }
@@ -0,0 +1,71 @@
+package chandraprasetyo.restful.controller;
+
+import chandraprasetyo.restful.model.AddressResponse;
+import chandraprasetyo.restful.model.ContactResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Strong ETags of contact and address responses, made from ids and versions only, so a cached
+ * response is compared without reading the row or serializing the body.
+ * Null when a version is unknown, no ETag is sent then.
+ */
+final class ResponseETag {
+
+    private static final Pattern VERSION = Pattern.compile("\\s*\"v(\\d{1,18})\"\\s*");
+
+    private ResponseETag() {
+    }
+
+    static String of(ContactResponse contact) {
+        if (contact.getVersion() == null) {
+            return null;
+        }
+        if (contact.getAddresses() == null) {
+            return "v" + contact.getVersion();
+        }
+        //embedded addresses are part of the body, their versions too
+        StringBuilder versions = new StringBuilder(contact.getId()).append(':').append(contact.getVersion());
+        return append(versions, contact.getAddresses());
+    }
+
+    static String of(AddressResponse address) {
+        return address.getVersion() == null ? null : "v" + address.getVersion();
+    }
+
+    /**
+     * @return the version of an If-Match header sent back from {@link #of(AddressResponse)},
+     * null without a header or with {@code *}. Any other value (a weak ETag too, If-Match compares strong ones)
+     * can never match, 412 like a stale version.
+     */
+    static Long version(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        Matcher matcher = VERSION.matcher(ifMatch);
+        if (!matcher.matches()) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "If-Match must be the ETag of the address");
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    static String of(List<AddressResponse> addresses) {
+        return append(new StringBuilder(), addresses);
+    }
+
+    private static String append(StringBuilder versions, List<AddressResponse> addresses) {
+        for (AddressResponse address : addresses) {
+            if (address.getVersion() == null) {
+                return null;
+            }
+            versions.append(',').append(address.getId()).append(':').append(address.getVersion());
+        }
+        return DigestUtils.md5DigestAsHex(versions.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,10 +1,16 @@
 package chandraprasetyo.restful.entity;
 
+import chandraprasetyo.restful.id.IdBytesType;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Type;
+import org.springframework.data.domain.Persistable;
 
 @Getter
 @Setter
@@ -12,9 +18,13 @@ import lombok.Setter;
 @NoArgsConstructor
 @Entity
 @Table(name = "addresses")
-public class Address {
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+public class Address implements Persistable<String> {
 
+    //stored like Contact.id
     @Id
+    @Type(IdBytesType.class)
+    @Column(length = 401)
     private String id;
 
     private String street;
@@ -28,8 +38,29 @@ public class Address {
     @Column(name = "postal_code")
     private String postalCode;
 
-    @ManyToOne
+    //optimistic locking, also the ETag of the responses
+    @Version
+    private Long version;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "contact_id", referencedColumnName = "id")
     private Contact contact;
 
+    //ids are assigned by us, without this save() would select the row before every insert
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean newAddress = true;
+
+    @Override
+    public boolean isNew() {
+        return newAddress;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        newAddress = false;
+    }
+
 }
@@ -1,10 +1,16 @@
 package chandraprasetyo.restful.entity;
 
+import chandraprasetyo.restful.id.IdBytesType;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Type;
+import org.springframework.data.domain.Persistable;
 
 import java.util.List;
 
@@ -14,9 +20,13 @@ import java.util.List;
 @NoArgsConstructor
 @Entity
 @Table(name = "contacts")
-public class Contact {
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+public class Contact implements Persistable<String> {
 
+    //16 bytes for a UUID, up to 100 chars of a legacy id in UTF-8 plus one, see IdBytesType
     @Id
+    @Type(IdBytesType.class)
+    @Column(length = 401)
     private String id;
 
     @Column(name = "first_name")
@@ -29,11 +39,34 @@ public class Contact {
 
     private String email;
 
-    @ManyToOne
+    //only the username is needed, and that is in the contacts row already
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "username", referencedColumnName = "username")
     private User user;
 
+    //optimistic locking, also the ETag of the responses
+    @Version
+    private Long version;
+
     @OneToMany(mappedBy = "contact")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private List<Address> addresses;
 
+    //ids are assigned by us, without this save() would select the row before every insert
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean newContact = true;
+
+    @Override
+    public boolean isNew() {
+        return newContact;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        newContact = false;
+    }
+
 }
@@ -0,0 +1,51 @@
+package chandraprasetyo.restful.entity;
+
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "sessions")
+public class UserSession implements Persistable<String> {
+
+    //sha-256 of the token, the token itself is never stored
+    @Id
+    @Column(name = "token_hash")
+    private String tokenHash;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "username", referencedColumnName = "username")
+    private User user;
+
+    @Column(name = "expired_at")
+    private Long expiredAt;
+
+    //session rows are insert only, skip the select merge() would do for an assigned id
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean newSession = true;
+
+    @Override
+    public String getId() {
+        return tokenHash;
+    }
+
+    @Override
+    public boolean isNew() {
+        return newSession;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        newSession = false;
+    }
+
+}
@@ -0,0 +1,134 @@
+package chandraprasetyo.restful.id;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.UserType;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Stores contact and address ids as bytes, the API keeps the string.
+ * <p>
+ * A UUID in its canonical lowercase form ({@link java.util.UUID#toString()}) is stored as its 16 bytes.
+ * Any other id (legacy ids, upper case UUIDs) is stored as its UTF-8 bytes, with one {@code 0x00} more when
+ * that is exactly 16 bytes, so only UUIDs are 16 bytes long. Both read back to the very same string.
+ * Ids never contain a NUL character. V5__binary_ids.sql converts the stored ids the same way.
+ * <p>
+ * Bytes compare case-sensitively, so ids from clients go through {@link #normalize(String)} first and every
+ * stored id is lower case (V6__lowercase_ids.sql), lookups ignore case like the old {@code _ci} collation did.
+ * <p>
+ * A Hibernate type and not a JPA AttributeConverter, Hibernate does not apply converters to an {@code @Id}.
+ */
+public class IdBytesType implements UserType<String> {
+
+    private static final int UUID_BYTES = 16;
+
+    private static final Pattern UUID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    /**
+     * Ids in the order of their stored bytes, the order of the primary key and of {@code order by id}.
+     * Same as the string order between two UUIDs.
+     */
+    public static final Comparator<String> ORDER = (left, right) -> {
+        if (isUuid(left) && isUuid(right)) {
+            return left.compareTo(right);
+        }
+        return Arrays.compareUnsigned(toBytes(left), toBytes(right));
+    };
+
+    @Override
+    public int getSqlType() {
+        return Types.VARBINARY;
+    }
+
+    @Override
+    public Class<String> returnedClass() {
+        return String.class;
+    }
+
+    @Override
+    public String nullSafeGet(ResultSet resultSet, int position, SharedSessionContractImplementor session, Object owner) throws SQLException {
+        byte[] bytes = resultSet.getBytes(position);
+        return bytes == null ? null : fromBytes(bytes);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement statement, String id, int index, SharedSessionContractImplementor session) throws SQLException {
+        if (id == null) {
+            statement.setNull(index, Types.VARBINARY);
+        } else {
+            statement.setBytes(index, toBytes(id));
+        }
+    }
+
+    @Override
+    public boolean equals(String left, String right) {
+        return Objects.equals(left, right);
+    }
+
+    @Override
+    public int hashCode(String id) {
+        return Objects.hashCode(id);
+    }
+
+    //strings are immutable, nothing to copy
+    @Override
+    public String deepCopy(String id) {
+        return id;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return false;
+    }
+
+    @Override
+    public Serializable disassemble(String id) {
+        return id;
+    }
+
+    @Override
+    public String assemble(Serializable cached, Object owner) {
+        return (String) cached;
+    }
+
+    //the form every id is stored in, for ids coming from clients
+    public static String normalize(String id) {
+        return id == null ? null : id.toLowerCase(Locale.ROOT);
+    }
+
+    public static byte[] toBytes(String id) {
+        if (isUuid(id)) {
+            return HEX.parseHex(id.replace("-", ""));
+        }
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        //16 bytes would be read back as a UUID
+        return bytes.length == UUID_BYTES ? Arrays.copyOf(bytes, UUID_BYTES + 1) : bytes;
+    }
+
+    public static String fromBytes(byte[] bytes) {
+        if (bytes.length == UUID_BYTES) {
+            String hex = HEX.formatHex(bytes);
+            return hex.substring(0, 8) + "-" + hex.substring(8, 12) + "-" + hex.substring(12, 16) + "-"
+                    + hex.substring(16, 20) + "-" + hex.substring(20);
+        }
+        int length = bytes.length == UUID_BYTES + 1 && bytes[UUID_BYTES] == 0 ? UUID_BYTES : bytes.length;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isUuid(String id) {
+        return id.length() == 36 && UUID.matcher(id).matches();
+    }
+}
@@ -0,0 +1,64 @@
+package chandraprasetyo.restful.id;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Ids of new contacts and addresses, picked by {@code id.strategy}.
+ * <p>
+ * {@link IdStrategy#TIME_ORDERED} ids are UUID v7 (RFC 9562): 48 bits of unix time in ms, a 12 bit
+ * counter and 62 random bits. Ids made by one instance always grow, also as strings, so inserts go to
+ * the right end of the InnoDB clustered index instead of splitting random pages all over it.
+ * The API keeps the 36 char string, {@link IdBytesType} stores it as 16 bytes.
+ */
+@Component
+public class IdGenerator {
+
+    private static final int COUNTER_BITS = 12;
+
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+
+    private final IdStrategy strategy;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private long lastMillis;
+
+    private long counter;
+
+    public IdGenerator(@Value("${id.strategy:TIME_ORDERED}") IdStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public String next() {
+        return strategy == IdStrategy.TIME_ORDERED ? timeOrdered().toString() : UUID.randomUUID().toString();
+    }
+
+    UUID timeOrdered() {
+        long millis;
+        long sequence;
+        synchronized (this) {
+            millis = Math.max(System.currentTimeMillis(), lastMillis);
+            if (millis == lastMillis) {
+                counter++;
+                if (counter > COUNTER_MASK) {
+                    //4096 ids in the same ms, borrow the next ms, the clock catches up soon
+                    millis++;
+                    counter = 0;
+                }
+            } else {
+                //random start in the lower half, leaves at least 2048 ids to count up inside the ms
+                counter = random.nextInt(1 << (COUNTER_BITS - 1));
+            }
+            lastMillis = millis;
+            sequence = counter;
+        }
+
+        long mostSigBits = (millis << 16) | (0x7L << 12) | sequence;
+        long leastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
@@ -0,0 +1,11 @@
+package chandraprasetyo.restful.id;
+
+public enum IdStrategy {
+
+    //random UUID v4, new rows land anywhere in the primary key index
+    RANDOM,
+
+    //UUID v7, starts with the creation time in ms, new rows are appended at the end of the primary key index
+    TIME_ORDERED
+
+}
@@ -1,5 +1,6 @@
 package chandraprasetyo.restful.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -23,4 +24,13 @@ public class AddressResponse {
 
     private String postalCode;
 
+    //for the ETag, not part of the json
+    @JsonIgnore
+    private Long version;
+
+    //used by the projection queries
+    public AddressResponse(String id, String street, String city, String province, String country, String postalCode) {
+        this(id, street, city, province, country, postalCode, null);
+    }
+
 }
@@ -0,0 +1,22 @@
+package chandraprasetyo.restful.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BulkItemResponse {
+
+    //position of the item in the request, from 0
+    private Integer index;
+
+    //id of the saved item, null when it failed
+    private String id;
+
+    private String errors;
+
+}
@@ -1,10 +1,14 @@
 package chandraprasetyo.restful.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -21,4 +25,21 @@ public class ContactResponse {
 
     private String phone;
 
+    //for the ETag, not part of the json
+    @JsonIgnore
+    private Long version;
+
+    //only when asked for, left out of the json otherwise
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<AddressResponse> addresses;
+
+    //used by the projection queries
+    public ContactResponse(String id, String firstName, String lastName, String email, String phone) {
+        this(id, firstName, lastName, email, phone, null, null);
+    }
+
+    public ContactResponse(String id, String firstName, String lastName, String email, String phone, Long version) {
+        this(id, firstName, lastName, email, phone, version, null);
+    }
+
 }
@@ -1,5 +1,6 @@
 package chandraprasetyo.restful.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
@@ -21,4 +22,8 @@ public class LoginUserRequest {
     @Size(max = 100)
     private String password;
 
+    //client ip, set by the controller not by the client
+    @JsonIgnore
+    private String remoteAddress;
+
 }
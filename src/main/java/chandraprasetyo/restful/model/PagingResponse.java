@@ -19,4 +19,9 @@ public class PagingResponse {
 
     private Integer totalElements;
 
+    private Boolean hasNext;
+
+    //cursor paging only, pass it as cursor to get the next window, null on the last one
+    private String nextCursor;
+
 }
@@ -24,4 +24,7 @@ public class SearchContactRequest {
     @NotNull
     private Integer size;
 
+    //keyset paging when not null, empty = first window, page is ignored then
+    private String cursor;
+
 }
@@ -22,6 +22,10 @@ public class UpdateAddressRequest {
     @NotBlank
     private String addressId;
 
+    //from If-Match, null = update whatever version is there
+    @JsonIgnore
+    private Long version;
+
     @Size(max = 200)
     private String street;
 
@@ -0,0 +1,36 @@
+package chandraprasetyo.restful.model;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UpsertAddressRequest {
+
+    //existing address of the contact to update, empty to create a new one
+    @Size(max = 100)
+    private String id;
+
+    @Size(max = 200)
+    private String street;
+
+    @Size(max = 100)
+    private String city;
+
+    @Size(max = 100)
+    private String province;
+
+    @NotBlank
+    @Size(max = 100)
+    private String country;
+
+    @Size(max = 10)
+    private String postalCode;
+
+}
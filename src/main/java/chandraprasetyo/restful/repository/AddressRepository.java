@@ -2,9 +2,17 @@ package chandraprasetyo.restful.repository;
 
 import chandraprasetyo.restful.entity.Address;
 import chandraprasetyo.restful.entity.Contact;
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.AddressResponse;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,4 +22,41 @@ public interface AddressRepository extends JpaRepository<Address, String> {
 
     List<Address> findAllByContact(Contact contact);
 
+    //only addresses of this contact, an id of any other one is not found
+    List<Address> findAllByContactAndIdIn(Contact contact, Collection<String> ids);
+
+    //read only responses, the owner of the contact is checked in the same query.
+    //kept in the query cache until addresses or contacts changes
+    @Query("select new chandraprasetyo.restful.model.AddressResponse(a.id, a.street, a.city, a.province, a.country, a.postalCode, a.version) " +
+            "from Address a where a.contact.id = :contactId and a.contact.user = :user and a.id = :id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    Optional<AddressResponse> findResponseByUserAndContactIdAndId(User user, String contactId, String id);
+
+    @Query("select new chandraprasetyo.restful.model.AddressResponse(a.id, a.street, a.city, a.province, a.country, a.postalCode, a.version) " +
+            "from Address a where a.contact.id = :contactId and a.contact.user = :user order by a.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<AddressResponse> findResponsesByUserAndContactId(User user, String contactId);
+
+    //addresses of many contacts in one query, each row is [contact id, AddressResponse]
+    @Query("select a.contact.id, new chandraprasetyo.restful.model.AddressResponse(a.id, a.street, a.city, a.province, a.country, a.postalCode, a.version) " +
+            "from Address a where a.contact.id in :contactIds order by a.id")
+    List<Object[]> findResponsesByContactIdIn(Collection<String> contactIds);
+
+    //one statement, 0 rows when the address is not in a contact of the user or has another version than the given one
+    //(null = any version). bumps the version like an entity update
+    @Modifying
+    @Query("update Address a set a.street = :street, a.city = :city, a.province = :province, a.country = :country, a.postalCode = :postalCode, " +
+            "a.version = a.version + 1 " +
+            "where a.id = :id and (:version is null or a.version = :version) " +
+            "and a.contact.id in (select c.id from Contact c where c.id = :contactId and c.user = :user)")
+    int updateByUserAndContactIdAndId(User user, String contactId, String id, Long version,
+                                      String street, String city, String province, String country, String postalCode);
+
+    boolean existsByContactIdAndId(String contactId, String id);
+
+    @Modifying
+    @Query("delete from Address a " +
+            "where a.id = :id and a.contact.id in (select c.id from Contact c where c.id = :contactId and c.user = :user)")
+    int deleteByUserAndContactIdAndId(User user, String contactId, String id);
+
 }
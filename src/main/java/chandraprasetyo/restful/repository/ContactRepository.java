@@ -2,15 +2,42 @@ package chandraprasetyo.restful.repository;
 
 import chandraprasetyo.restful.entity.Contact;
 import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.ContactResponse;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ContactRepository extends JpaRepository<Contact, String>, JpaSpecificationExecutor<Contact> {
+public interface ContactRepository extends JpaRepository<Contact, String>, JpaSpecificationExecutor<Contact>, ContactRepositoryCustom {
 
     Optional<Contact> findFirstByUserAndId(User user, String id);
 
+    boolean existsByUserAndId(User user, String id);
+
+    long countByUser(User user);
+
+    //read only responses, no entity, no user join. kept in the query cache until contacts changes
+    @Query("select new chandraprasetyo.restful.model.ContactResponse(c.id, c.firstName, c.lastName, c.email, c.phone, c.version) " +
+            "from Contact c where c.user = :user and c.id = :id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    Optional<ContactResponse> findResponseByUserAndId(User user, String id);
+
+    //ids from the search index, the owner is checked again so no other user's contact can come back
+    @Query("select new chandraprasetyo.restful.model.ContactResponse(c.id, c.firstName, c.lastName, c.email, c.phone) " +
+            "from Contact c where c.user = :user and c.id in :ids")
+    List<ContactResponse> findResponsesByUserAndIdIn(User user, Collection<String> ids);
+
+    //only the searchable columns, no entity is managed for this
+    @Query("select new chandraprasetyo.restful.model.ContactResponse(c.id, c.firstName, c.lastName, c.email, c.phone) " +
+            "from Contact c where c.user = :user")
+    List<ContactResponse> findAllForSearchIndex(User user);
+
 }
@@ -0,0 +1,20 @@
+package chandraprasetyo.restful.repository;
+
+import chandraprasetyo.restful.entity.Contact;
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.ContactResponse;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.stream.Stream;
+
+public interface ContactRepositoryCustom {
+
+    //like findAll(specification, pageable) but without the count query, ordered by id, read straight into responses
+    Slice<ContactResponse> findSlice(Specification<Contact> specification, Pageable pageable);
+
+    //every contact of the user ordered by id, read from an open cursor while consumed, must be closed
+    Stream<ContactResponse> streamAll(User user, boolean withAddresses);
+
+}
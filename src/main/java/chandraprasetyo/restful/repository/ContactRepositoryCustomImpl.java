@@ -0,0 +1,115 @@
+package chandraprasetyo.restful.repository;
+
+import chandraprasetyo.restful.entity.Contact;
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.AddressResponse;
+import chandraprasetyo.restful.model.ContactResponse;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class ContactRepositoryCustomImpl implements ContactRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    //Integer.MIN_VALUE makes MySQL Connector/J stream the rows one by one instead of reading them all
+    @Value("${contact.export.fetch-size:-2147483648}")
+    private int exportFetchSize;
+
+    @Override
+    public Slice<ContactResponse> findSlice(Specification<Contact> specification, Pageable pageable) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ContactResponse> query = builder.createQuery(ContactResponse.class);
+        Root<Contact> root = query.from(Contact.class);
+
+        Predicate predicate = specification.toPredicate(root, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        //only the response columns, no managed entity and no user join
+        query.select(builder.construct(ContactResponse.class, root.get("id"), root.get("firstName"),
+                        root.get("lastName"), root.get("email"), root.get("phone")))
+                .orderBy(builder.asc(root.get("id")));
+
+        //one more row than the page tells if there is a next one
+        List<ContactResponse> contacts = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1)
+                .getResultList();
+
+        boolean hasNext = contacts.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? contacts.subList(0, pageable.getPageSize()) : contacts, pageable, hasNext);
+    }
+
+    @Override
+    public Stream<ContactResponse> streamAll(User user, boolean withAddresses) {
+        if (!withAddresses) {
+            return entityManager.createQuery("select new chandraprasetyo.restful.model.ContactResponse(c.id, c.firstName, c.lastName, c.email, c.phone) " +
+                            "from Contact c where c.user = :user order by c.id", ContactResponse.class)
+                    .setParameter("user", user)
+                    .setHint(HibernateHints.HINT_FETCH_SIZE, exportFetchSize)
+                    .getResultStream();
+        }
+
+        //one query, the rows of a contact come one after the other
+        Stream<Object[]> rows = entityManager.createQuery("select c.id, c.firstName, c.lastName, c.email, c.phone, " +
+                        "a.id, a.street, a.city, a.province, a.country, a.postalCode " +
+                        "from Contact c left join c.addresses a where c.user = :user order by c.id, a.id", Object[].class)
+                .setParameter("user", user)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, exportFetchSize)
+                .getResultStream();
+        return groupByContact(rows);
+    }
+
+    //only the rows of the current contact are held in memory
+    private static Stream<ContactResponse> groupByContact(Stream<Object[]> rows) {
+        Iterator<Object[]> iterator = rows.iterator();
+        Iterator<ContactResponse> contacts = new Iterator<>() {
+
+            private Object[] row = iterator.hasNext() ? iterator.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return row != null;
+            }
+
+            @Override
+            public ContactResponse next() {
+                if (row == null) {
+                    throw new NoSuchElementException();
+                }
+                ContactResponse contact = new ContactResponse((String) row[0], (String) row[1], (String) row[2],
+                        (String) row[3], (String) row[4], null, new ArrayList<>());
+                do {
+                    if (row[5] != null) {
+                        contact.getAddresses().add(new AddressResponse((String) row[5], (String) row[6], (String) row[7],
+                                (String) row[8], (String) row[9], (String) row[10]));
+                    }
+                    row = iterator.hasNext() ? iterator.next() : null;
+                } while (row != null && row[0].equals(contact.getId()));
+                return contact;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(contacts, Spliterator.ORDERED), false)
+                .onClose(rows::close);
+    }
+}
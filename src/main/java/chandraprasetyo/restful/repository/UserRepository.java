@@ -1,9 +1,15 @@
 package chandraprasetyo.restful.repository;
 
 import chandraprasetyo.restful.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +17,12 @@ public interface UserRepository extends JpaRepository<User, String> {
 
     Optional<User> findFirstByToken(String token);
 
+    //keyset page, next page starts after the last username returned
+    @Query("select u.username from User u where u.tokenExpiredAt < :now and u.username > :after order by u.username")
+    List<String> findExpiredTokenUsernames(@Param("now") long now, @Param("after") String after, Pageable pageable);
+
+    @Modifying
+    @Query("update User u set u.token = null, u.tokenExpiredAt = null where u.username in :usernames and u.tokenExpiredAt < :now")
+    int clearExpiredTokens(@Param("usernames") Collection<String> usernames, @Param("now") long now);
+
 }
@@ -0,0 +1,35 @@
+package chandraprasetyo.restful.repository;
+
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.entity.UserSession;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UserSessionRepository extends JpaRepository<UserSession, String> {
+
+    @EntityGraph(attributePaths = "user")
+    Optional<UserSession> findFirstByTokenHash(String tokenHash);
+
+    @Modifying
+    @Query("delete from UserSession s where s.user = :user and s.expiredAt < :now")
+    int deleteExpiredByUser(@Param("user") User user, @Param("now") long now);
+
+    //keyset page, next page starts after the last token hash returned
+    @Query("select s.tokenHash from UserSession s where s.expiredAt < :now and s.tokenHash > :after order by s.tokenHash")
+    List<String> findExpiredTokenHashes(@Param("now") long now, @Param("after") String after, Pageable pageable);
+
+    @Modifying
+    @Query("delete from UserSession s where s.tokenHash in :tokenHashes and s.expiredAt < :now")
+    int deleteExpired(@Param("tokenHashes") Collection<String> tokenHashes, @Param("now") long now);
+
+}
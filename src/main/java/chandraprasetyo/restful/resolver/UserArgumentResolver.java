@@ -1,10 +1,18 @@
 package chandraprasetyo.restful.resolver;
 
+import chandraprasetyo.restful.cache.NegativeLookupCache;
+import chandraprasetyo.restful.cache.SessionCache;
 import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.entity.UserSession;
 import chandraprasetyo.restful.repository.UserRepository;
+import chandraprasetyo.restful.repository.UserSessionRepository;
+import chandraprasetyo.restful.security.TokenDigest;
+import chandraprasetyo.restful.security.TokenMode;
+import chandraprasetyo.restful.security.TokenSigner;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.MethodParameter;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
@@ -21,6 +29,21 @@ public class UserArgumentResolver implements HandlerMethodArgumentResolver {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserSessionRepository userSessionRepository;
+
+    @Autowired
+    private SessionCache sessionCache;
+
+    @Autowired
+    private NegativeLookupCache negativeLookupCache;
+
+    @Autowired
+    private TokenSigner tokenSigner;
+
+    @Value("${auth.token.mode:USER}")
+    private TokenMode tokenMode;
+
     @Override
     public boolean supportsParameter(MethodParameter parameter) {
         return User.class.equals(parameter.getParameterType());
@@ -36,16 +59,72 @@ public class UserArgumentResolver implements HandlerMethodArgumentResolver {
             //if token == null then throw Unauthorized
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
         }
+        if (tokenMode == TokenMode.SIGNED){
+            return resolveSignedToken(token);
+        }
+
+        //recently seen token, no need to go to Database
+        User cached = sessionCache.get(token);
+        if (cached != null){
+            return cached;
+        }
+        //recently unknown token, no need to go to Database either
+        if (negativeLookupCache.isUnknownToken(token)){
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
+        }
+        if (tokenMode == TokenMode.SESSION){
+            return resolveSessionToken(token);
+        }
+
             //if token not null/exist then query check if token exist in Database
             //if no token in Database then throw Unauthorized
         User user = userRepository.findFirstByToken(token)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized"));
+                .orElseThrow(() -> unknownToken(token));
         log.info("USER {}", user);
         if (user.getTokenExpiredAt() < System.currentTimeMillis()){
-           throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
+           throw unknownToken(token);
         }
+        sessionCache.put(token, user, user.getTokenExpiredAt());
 
         //if the token exist in database then return User
         return user;
     }
+
+    private User resolveSessionToken(String token) {
+        UserSession session = userSessionRepository.findFirstByTokenHash(TokenDigest.sha256(token))
+                .orElseThrow(() -> unknownToken(token));
+        if (session.getExpiredAt() < System.currentTimeMillis()){
+            throw unknownToken(token);
+        }
+        sessionCache.put(token, session.getUser(), session.getExpiredAt());
+
+        return session.getUser();
+    }
+
+    //an unknown or expired token never becomes valid again, remember it for a while
+    private ResponseStatusException unknownToken(String token) {
+        negativeLookupCache.unknownToken(token);
+        return new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
+    }
+
+    private User resolveSignedToken(String token) {
+        TokenSigner.SignedToken signedToken = tokenSigner.verify(token);
+        if (signedToken == null || signedToken.expiredAt() < System.currentTimeMillis()){
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
+        }
+        User cached = sessionCache.get(token);
+        if (cached != null){
+            return cached;
+        }
+        if (negativeLookupCache.isUnknownToken(token)){
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
+        }
+
+        //the signature is still valid after the user is gone, so the user is looked up once per token
+        User user = userRepository.findById(signedToken.username())
+                .orElseThrow(() -> unknownToken(token));
+        sessionCache.put(token, user, signedToken.expiredAt());
+
+        return user;
+    }
 }
@@ -0,0 +1,112 @@
+package chandraprasetyo.restful.scheduler;
+
+import chandraprasetyo.restful.repository.UserRepository;
+import chandraprasetyo.restful.repository.UserSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Clears expired tokens from users.token and deletes expired rows of the sessions table.
+ * <p>
+ * Rows are walked by primary key in pages of {@code auth.token-reaper.batch-size}, each page
+ * cleared in its own short transaction followed by a pause of {@code auth.token-reaper.batch-delay} ms,
+ * so a run never holds locks on more than one batch at a time.
+ */
+@Component
+@ConditionalOnProperty(name = "auth.token-reaper.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class ExpiredTokenReaper {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSessionRepository userSessionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${auth.token-reaper.batch-size:500}")
+    private int batchSize;
+
+    @Value("${auth.token-reaper.batch-delay:100}")
+    private long batchDelay;
+
+    @Scheduled(fixedDelayString = "${auth.token-reaper.interval:600000}",
+            initialDelayString = "${auth.token-reaper.interval:600000}")
+    public void run() {
+        reap();
+    }
+
+    /**
+     * @return number of users tokens and sessions cleaned in this run
+     */
+    public int reap() {
+        long start = System.currentTimeMillis();
+
+        int users = reap(userRepository::findExpiredTokenUsernames, userRepository::clearExpiredTokens, start);
+        int sessions = reap(userSessionRepository::findExpiredTokenHashes, userSessionRepository::deleteExpired, start);
+
+        Counter.builder("auth.token.reaped").tag("store", "users").register(meterRegistry).increment(users);
+        Counter.builder("auth.token.reaped").tag("store", "sessions").register(meterRegistry).increment(sessions);
+        log.info("Reaped {} expired users token and {} expired sessions in {} ms",
+                users, sessions, System.currentTimeMillis() - start);
+
+        return users + sessions;
+    }
+
+    private int reap(KeysetQuery findExpired, BiFunction<Collection<String>, Long, Integer> clearExpired, long now) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Pageable batch = PageRequest.of(0, batchSize);
+
+        int total = 0;
+        String after = "";
+        while (true) {
+            String from = after;
+            List<String> keys = transactionTemplate.execute(status -> findExpired.find(now, from, batch));
+            if (keys == null || keys.isEmpty()) {
+                return total;
+            }
+
+            Integer cleared = transactionTemplate.execute(status -> clearExpired.apply(keys, now));
+            total += cleared == null ? 0 : cleared;
+            after = keys.get(keys.size() - 1);
+
+            if (keys.size() < batchSize || !pause()) {
+                return total;
+            }
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(batchDelay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    private interface KeysetQuery {
+        List<String> find(long now, String after, Pageable pageable);
+    }
+}
@@ -0,0 +1,400 @@
+package chandraprasetyo.restful.search;
+
+import chandraprasetyo.restful.entity.Contact;
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.id.IdBytesType;
+import chandraprasetyo.restful.model.ContactResponse;
+import chandraprasetyo.restful.model.SearchContactRequest;
+import chandraprasetyo.restful.repository.ContactRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Window;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory trigram index of the contacts of each user, answering the name/email/phone search of
+ * {@code /api/contacts} without the {@code like '%x%'} scans.
+ * <p>
+ * The index of a user is loaded with one query the first time the user searches, and kept up to date by
+ * {@link #indexAfterCommit(Contact)} and {@link #removeAfterCommit(User, String)} from the contact service.
+ * Matching is the same as the database under utf8mb4_0900_ai_ci: substring on first/last name, email and phone,
+ * ignoring case and accents ({@code fold}), with {@code %} and {@code _} taken literally on both sides.
+ * Only searches with a query of at least 3 characters are answered here ({@link #canSearch(SearchContactRequest)}),
+ * without a trigram every contact would be checked, the {@code (username, id)} index of the database does better.
+ * <p>
+ * A contact takes about 2.3 KB of heap (document, id, postings), at most {@code contact.search.index.maximum-size}
+ * contacts are kept over all users, the least recently used users are dropped first and loaded again on their
+ * next search. The index of a user is also dropped {@code contact.search.index.ttl} ms after it was loaded, changes
+ * applied since do not extend it, which bounds how stale it gets when contacts change some other way.
+ * <p>
+ * A user with more than {@code contact.search.index.maximum-user-size} contacts is not indexed at all, the methods
+ * answer null and the caller searches the database. Loading such an index would push everybody else out, or be
+ * dropped right away and loaded again on every search. That is remembered for the same ttl.
+ */
+@Component
+public class ContactSearchIndex {
+
+    private static final int GRAM = 3;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    private final boolean enabled;
+
+    private final long maximumUserSize;
+
+    private final Cache<String, UserIndex> indexes;
+
+    //users with too many contacts to index, searched in the database
+    private final Cache<String, Boolean> oversized;
+
+    public ContactSearchIndex(@Value("${contact.search.index.enabled:true}") boolean enabled,
+                              @Value("${contact.search.index.maximum-size:100000}") long maximumSize,
+                              @Value("${contact.search.index.maximum-user-size:10000}") long maximumUserSize,
+                              @Value("${contact.search.index.ttl:3600000}") long ttl,
+                              MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maximumUserSize = Math.min(maximumUserSize, maximumSize);
+        this.oversized = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .build();
+        this.indexes = Caffeine.newBuilder()
+                .maximumWeight(maximumSize)
+                .<String, UserIndex>weigher((username, index) -> Math.max(1, index.size()))
+                .expireAfter(new LoadExpiry(TimeUnit.MILLISECONDS.toNanos(ttl)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, indexes, "contact-search");
+    }
+
+    //at least one query long enough for a trigram, otherwise search the database
+    public boolean canSearch(SearchContactRequest request) {
+        if (!enabled) {
+            return false;
+        }
+        for (String query : new String[]{request.getName(), request.getEmail(), request.getPhone()}) {
+            if (query != null && query.length() >= GRAM) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return ids of the matching contacts ordered by id, only the requested page, null when the user is not indexed
+     */
+    public Page<String> search(User user, SearchContactRequest request) {
+        UserIndex index = index(user);
+        return index == null ? null : index.search(request);
+    }
+
+    /**
+     * @return ids of the matching contacts ordered by id, only the requested page, without a total,
+     * null when the user is not indexed
+     */
+    public Slice<String> slice(User user, SearchContactRequest request) {
+        UserIndex index = index(user);
+        return index == null ? null : index.slice(request);
+    }
+
+    /**
+     * @return ids of the matching contacts after the given id in id order, at most one window,
+     * null when the user is not indexed
+     */
+    public Window<String> scroll(User user, SearchContactRequest request, String afterId) {
+        UserIndex index = index(user);
+        return index == null ? null : index.scroll(request, afterId);
+    }
+
+    private UserIndex index(User user) {
+        if (oversized.getIfPresent(user.getUsername()) != null) {
+            return null;
+        }
+        //null from load() is not cached
+        return indexes.get(user.getUsername(), username -> load(user));
+    }
+
+    private UserIndex load(User user) {
+        //counted in the (username, id) index first, the contacts are only read when they fit
+        if (contactRepository.countByUser(user) > maximumUserSize) {
+            oversized.put(user.getUsername(), Boolean.TRUE);
+            return null;
+        }
+        UserIndex index = new UserIndex();
+        for (ContactResponse contact : contactRepository.findAllForSearchIndex(user)) {
+            index.put(contact.getId(), contact.getFirstName(), contact.getLastName(), contact.getEmail(), contact.getPhone());
+        }
+        return index;
+    }
+
+    //applied once the transaction is committed, a rollback leaves the index alone
+    public void indexAfterCommit(Contact contact) {
+        indexAllAfterCommit(contact.getUser(), List.of(contact));
+    }
+
+    //contacts of the same user
+    public void indexAllAfterCommit(User user, List<Contact> contacts) {
+        //copied now, the entities may change before the commit
+        List<ContactResponse> documents = contacts.stream()
+                .map(contact -> new ContactResponse(contact.getId(), contact.getFirstName(), contact.getLastName(),
+                        contact.getEmail(), contact.getPhone()))
+                .toList();
+        afterCommit(user.getUsername(), index -> documents.forEach(document -> index.put(document.getId(),
+                document.getFirstName(), document.getLastName(), document.getEmail(), document.getPhone())));
+    }
+
+    public void removeAfterCommit(User user, String contactId) {
+        afterCommit(user.getUsername(), index -> index.remove(contactId));
+    }
+
+    private void afterCommit(String username, Consumer<UserIndex> change) {
+        if (!enabled) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                //not loaded, nothing to do, it is read from database on next search.
+                //computeIfPresent waits for a load running at the same time, so the change is never lost
+                indexes.asMap().computeIfPresent(username, (key, index) -> {
+                    change.accept(index);
+                    if (index.size() > maximumUserSize) {
+                        //grew too large, dropped and searched in the database from now on
+                        oversized.put(username, Boolean.TRUE);
+                        return null;
+                    }
+                    //weighed again with the new size
+                    return index;
+                });
+            }
+        });
+    }
+
+    public void invalidateAll() {
+        indexes.invalidateAll();
+        oversized.invalidateAll();
+    }
+
+    //lower case without accents, "José" and "JOSE" are both "jose" like in the _ai_ci collation
+    private static String fold(String value) {
+        if (value == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean contains(String value, String query) {
+        return value != null && value.contains(query);
+    }
+
+    //counted from the load, an index kept up to date by the changes still gets read from database again
+    private record LoadExpiry(long ttlNanos) implements Expiry<String, UserIndex> {
+
+        @Override
+        public long expireAfterCreate(String username, UserIndex index, long currentTime) {
+            return ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String username, UserIndex index, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String username, UserIndex index, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private record Matches(List<String> ids, int total) {
+    }
+
+    private record Document(String firstName, String lastName, String email, String phone) {
+
+        boolean matches(String name, String email, String phone) {
+            return (name == null || contains(this.firstName, name) || contains(this.lastName, name))
+                    && (email == null || contains(this.email, email))
+                    && (phone == null || contains(this.phone, phone));
+        }
+    }
+
+    //index of one user, every access holds its monitor
+    private static class UserIndex {
+
+        //ordered by id like the database (stored bytes), pages come out in a stable order
+        private final TreeMap<String, Document> documents = new TreeMap<>(IdBytesType.ORDER);
+
+        //trigram -> ids of contacts having it in any field, a candidate still has to be checked
+        private final Map<String, Set<String>> postings = new HashMap<>();
+
+        synchronized int size() {
+            return documents.size();
+        }
+
+        synchronized void put(String id, String firstName, String lastName, String email, String phone) {
+            remove(id);
+            Document document = new Document(fold(firstName), fold(lastName), fold(email), fold(phone));
+            documents.put(id, document);
+            for (String gram : grams(document)) {
+                postings.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+            }
+        }
+
+        synchronized void remove(String id) {
+            Document document = documents.remove(id);
+            if (document == null) {
+                return;
+            }
+            for (String gram : grams(document)) {
+                Set<String> ids = postings.get(gram);
+                if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+
+        synchronized Page<String> search(SearchContactRequest request) {
+            //only the ids up to the end of the page are kept and sorted, the others are just counted
+            int from = (int) Math.min((long) request.getPage() * request.getSize(), Integer.MAX_VALUE - request.getSize());
+            Matches matches = matches(request, null, from + request.getSize(), true);
+
+            List<String> ids = matches.ids();
+            return new PageImpl<>(new ArrayList<>(ids.subList(Math.min(from, ids.size()), ids.size())),
+                    PageRequest.of(request.getPage(), request.getSize()), matches.total());
+        }
+
+        synchronized Slice<String> slice(SearchContactRequest request) {
+            //nothing after the page is needed but one id telling if there is a next page
+            int from = request.getPage() * request.getSize();
+            List<String> matches = matches(request, null, from + request.getSize() + 1, false).ids();
+
+            boolean hasNext = matches.size() > from + request.getSize();
+            List<String> ids = new ArrayList<>(matches.subList(Math.min(from, matches.size()),
+                    Math.min(from + request.getSize(), matches.size())));
+            return new SliceImpl<>(ids, PageRequest.of(request.getPage(), request.getSize()), hasNext);
+        }
+
+        synchronized Window<String> scroll(SearchContactRequest request, String after) {
+            //one more than asked, tells if there is a next window
+            List<String> matches = matches(request, after, request.getSize() + 1, false).ids();
+            boolean hasNext = matches.size() > request.getSize();
+            List<String> ids = hasNext ? new ArrayList<>(matches.subList(0, request.getSize())) : matches;
+            return Window.from(ids, i -> ScrollPosition.forward(Map.of("id", ids.get(i))), hasNext);
+        }
+
+        /**
+         * The first limit matching ids after the given one (null = from the start) in id order.
+         * With count, also the number of all matches after it, otherwise total is only a lower bound.
+         * Candidates come in no order, the first ones are picked with a heap of at most limit ids
+         * instead of sorting every match.
+         */
+        private Matches matches(SearchContactRequest request, String after, int limit, boolean count) {
+            String name = fold(request.getName());
+            String email = fold(request.getEmail());
+            String phone = fold(request.getPhone());
+
+            //smallest posting list of all the query trigrams, every match is in it
+            Collection<String> candidates = null;
+            for (String query : new String[]{name, email, phone}) {
+                if (query == null) {
+                    continue;
+                }
+                for (String gram : grams(query)) {
+                    Set<String> ids = postings.getOrDefault(gram, Collections.emptySet());
+                    if (candidates == null || ids.size() < candidates.size()) {
+                        candidates = ids;
+                    }
+                }
+            }
+
+            int total = 0;
+            if (candidates == null) {
+                //no query long enough for a trigram, check every contact (already in id order)
+                List<String> matches = new ArrayList<>();
+                Map<String, Document> tail = after == null ? documents : documents.tailMap(after, false);
+                for (Map.Entry<String, Document> entry : tail.entrySet()) {
+                    if (matches.size() == limit && !count) {
+                        break;
+                    }
+                    if (entry.getValue().matches(name, email, phone)) {
+                        total++;
+                        if (matches.size() < limit) {
+                            matches.add(entry.getKey());
+                        }
+                    }
+                }
+                return new Matches(matches, total);
+            }
+
+            //largest id on top, replaced whenever a smaller one matches
+            PriorityQueue<String> first = new PriorityQueue<>(IdBytesType.ORDER.reversed());
+            for (String id : candidates) {
+                if ((after == null || IdBytesType.ORDER.compare(id, after) > 0) && documents.get(id).matches(name, email, phone)) {
+                    total++;
+                    if (first.size() < limit) {
+                        first.add(id);
+                    } else if (limit > 0 && IdBytesType.ORDER.compare(id, first.peek()) < 0) {
+                        first.poll();
+                        first.add(id);
+                    }
+                }
+            }
+            List<String> matches = new ArrayList<>(first);
+            matches.sort(IdBytesType.ORDER);
+            return new Matches(matches, total);
+        }
+
+        private static Set<String> grams(Document document) {
+            Set<String> grams = new HashSet<>();
+            grams.addAll(grams(document.firstName()));
+            grams.addAll(grams(document.lastName()));
+            grams.addAll(grams(document.email()));
+            grams.addAll(grams(document.phone()));
+            return grams;
+        }
+
+        private static Set<String> grams(String value) {
+            if (value == null || value.length() < GRAM) {
+                return Collections.emptySet();
+            }
+            Set<String> grams = new HashSet<>();
+            for (int i = 0; i + GRAM <= value.length(); i++) {
+                grams.add(value.substring(i, i + GRAM));
+            }
+            return grams;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package chandraprasetyo.restful.security;
+
+import java.util.Arrays;
+
+/**
+ * Allocation-reduced variant of {@link BCrypt} producing exactly the same hashes.
+ * <p>
+ * The Blowfish key schedule, salt, password and output buffers are kept per thread and reused
+ * between calls instead of being cloned for every hash. {@link #checkpw(String, String)} rebuilds
+ * the hash into the per thread buffer and compares it with the stored hash in constant time,
+ * without creating any intermediate String.
+ */
+public final class BCryptEngine {
+
+    private static final int BLOWFISH_NUM_ROUNDS = 16;
+
+    private static final int BCRYPT_SALT_LEN = 16;
+
+    // only 23 of the 24 ciphertext bytes are encoded in the hash, like BCrypt
+    private static final int BCRYPT_HASH_LEN = 23;
+
+    private static final ThreadLocal<BCryptEngine> ENGINE = ThreadLocal.withInitial(BCryptEngine::new);
+
+    // Expanded Blowfish key
+    private final int[] P = new int[BCrypt.P_orig.length];
+
+    private final int[] S = new int[BCrypt.S_orig.length];
+
+    private final int[] cdata = new int[BCrypt.bf_crypt_ciphertext.length];
+
+    private final int[] lr = new int[2];
+
+    private final byte[] salt = new byte[BCRYPT_SALT_LEN];
+
+    private final byte[] hashed = new byte[BCrypt.bf_crypt_ciphertext.length * 4];
+
+    // "$2a$10$" + 22 chars of salt + 31 chars of hash
+    private final char[] out = new char[60];
+
+    private int outLen;
+
+    // UTF-8 password, grown when a longer password comes in
+    private byte[] key = new byte[64];
+
+    private int keyLen;
+
+    private int keyOff;
+
+    private int saltOff;
+
+    // cumulative flag for non-benign sign extension, see BCrypt.streamtowords
+    private int sign;
+
+    private int wordCorrect;
+
+    private int wordBug;
+
+    private BCryptEngine() {
+    }
+
+    /**
+     * Hash a password using the OpenBSD bcrypt scheme, same result as {@link BCrypt#hashpw(String, String)}
+     * @param password the password to hash
+     * @param salt the salt to hash with (perhaps generated using BCrypt.gensalt)
+     * @return the hashed password
+     */
+    public static String hashpw(String password, String salt) {
+        BCryptEngine engine = ENGINE.get();
+        engine.hashpw(password, salt, false);
+        return new String(engine.out, 0, engine.outLen);
+    }
+
+    /**
+     * Check that a plaintext password matches a previously hashed one, same result as
+     * {@link BCrypt#checkpw(String, String)}
+     * @param plaintext the plaintext password to verify
+     * @param hashed the previously-hashed password
+     * @return true if the passwords match, false otherwise
+     */
+    public static boolean checkpw(String plaintext, String hashed) {
+        BCryptEngine engine = ENGINE.get();
+        engine.hashpw(plaintext, hashed, true);
+
+        // no early return, every char is compared
+        int length = Math.min(engine.outLen, hashed.length());
+        int diff = engine.outLen ^ hashed.length();
+        for (int i = 0; i < length; i++) {
+            diff |= engine.out[i] ^ hashed.charAt(i);
+        }
+        return diff == 0;
+    }
+
+    private void hashpw(String password, String salt, boolean for_check) {
+        char minor = (char) 0;
+        int rounds, off;
+
+        if (salt == null) {
+            throw new IllegalArgumentException("salt cannot be null");
+        }
+
+        int saltLength = salt.length();
+
+        if (saltLength < 28) {
+            throw new IllegalArgumentException("Invalid salt");
+        }
+
+        if (salt.charAt(0) != '$' || salt.charAt(1) != '2') {
+            throw new IllegalArgumentException("Invalid salt version");
+        }
+        if (salt.charAt(2) == '$') {
+            off = 3;
+        }
+        else {
+            minor = salt.charAt(2);
+            if ((minor != 'a' && minor != 'x' && minor != 'y' && minor != 'b') || salt.charAt(3) != '$') {
+                throw new IllegalArgumentException("Invalid salt revision");
+            }
+            off = 4;
+        }
+
+        // Extract number of rounds
+        if (salt.charAt(off + 2) > '$') {
+            throw new IllegalArgumentException("Missing salt rounds");
+        }
+
+        if (off == 4 && saltLength < 29) {
+            throw new IllegalArgumentException("Invalid salt");
+        }
+        rounds = Integer.parseInt(salt, off, off + 2, 10);
+
+        int saltb = decodeSalt(salt, off + 3);
+        encodeKey(password, minor >= 'a');
+        try {
+            crypt_raw(saltb, rounds, minor == 'x', minor == 'a' ? 0x10000 : 0, for_check);
+        } finally {
+            Arrays.fill(key, 0, keyLen, (byte) 0);
+        }
+
+        int n = 0;
+        out[n++] = '$';
+        out[n++] = '2';
+        if (minor >= 'a') {
+            out[n++] = minor;
+        }
+        out[n++] = '$';
+        out[n++] = (char) ('0' + rounds / 10);
+        out[n++] = (char) ('0' + rounds % 10);
+        out[n++] = '$';
+        n = encode_base64(this.salt, BCRYPT_SALT_LEN, n);
+        outLen = encode_base64(hashed, BCRYPT_HASH_LEN, n);
+    }
+
+    /**
+     * Same as BCrypt.crypt_raw, result is written in {@link #hashed}
+     */
+    private void crypt_raw(int saltLen, int log_rounds, boolean sign_ext_bug, int safety, boolean for_check) {
+        long rounds;
+        if (log_rounds < 4 || log_rounds > 31) {
+            if (!for_check || log_rounds != 0) {
+                throw new IllegalArgumentException("Bad number of rounds");
+            }
+            rounds = 0;
+        }
+        else {
+            rounds = 1L << log_rounds;
+        }
+
+        if (saltLen != BCRYPT_SALT_LEN) {
+            throw new IllegalArgumentException("Bad salt length");
+        }
+
+        System.arraycopy(BCrypt.P_orig, 0, P, 0, P.length);
+        System.arraycopy(BCrypt.S_orig, 0, S, 0, S.length);
+        System.arraycopy(BCrypt.bf_crypt_ciphertext, 0, cdata, 0, cdata.length);
+
+        ekskey(sign_ext_bug, safety);
+        for (long i = 0; i < rounds; i++) {
+            keyPassword(sign_ext_bug);
+            keySalt();
+        }
+
+        int clen = cdata.length;
+        for (int i = 0; i < 64; i++) {
+            for (int j = 0; j < (clen >> 1); j++) {
+                encipher(cdata, j << 1);
+            }
+        }
+
+        for (int i = 0, j = 0; i < clen; i++) {
+            hashed[j++] = (byte) ((cdata[i] >> 24) & 0xff);
+            hashed[j++] = (byte) ((cdata[i] >> 16) & 0xff);
+            hashed[j++] = (byte) ((cdata[i] >> 8) & 0xff);
+            hashed[j++] = (byte) (cdata[i] & 0xff);
+        }
+    }
+
+    /**
+     * Same as BCrypt.ekskey with the password in {@link #key} and the salt in {@link #salt}
+     */
+    private void ekskey(boolean sign_ext_bug, int safety) {
+        int plen = P.length, slen = S.length;
+        int diff = 0; // zero iff correct and buggy are same
+
+        keyOff = 0;
+        saltOff = 0;
+        sign = 0;
+        lr[0] = 0;
+        lr[1] = 0;
+
+        for (int i = 0; i < plen; i++) {
+            streamKeyWords();
+            diff |= wordCorrect ^ wordBug;
+            P[i] = P[i] ^ (sign_ext_bug ? wordBug : wordCorrect);
+        }
+
+        // see BCrypt.ekskey for the safety measure
+        int flag = sign;
+        diff |= diff >> 16;
+        diff &= 0xffff;
+        diff += 0xffff;
+        flag <<= 9;
+        flag &= ~diff & safety;
+        P[0] ^= flag;
+
+        for (int i = 0; i < plen; i += 2) {
+            lr[0] ^= streamSaltWord();
+            lr[1] ^= streamSaltWord();
+            encipher(lr, 0);
+            P[i] = lr[0];
+            P[i + 1] = lr[1];
+        }
+
+        for (int i = 0; i < slen; i += 2) {
+            lr[0] ^= streamSaltWord();
+            lr[1] ^= streamSaltWord();
+            encipher(lr, 0);
+            S[i] = lr[0];
+            S[i + 1] = lr[1];
+        }
+    }
+
+    /**
+     * Same as BCrypt.key with the password as key
+     */
+    private void keyPassword(boolean sign_ext_bug) {
+        keyOff = 0;
+        for (int i = 0; i < P.length; i++) {
+            streamKeyWords();
+            P[i] = P[i] ^ (sign_ext_bug ? wordBug : wordCorrect);
+        }
+        expand();
+    }
+
+    /**
+     * Same as BCrypt.key with the salt as key
+     */
+    private void keySalt() {
+        saltOff = 0;
+        for (int i = 0; i < P.length; i++) {
+            P[i] = P[i] ^ streamSaltWord();
+        }
+        expand();
+    }
+
+    private void expand() {
+        lr[0] = 0;
+        lr[1] = 0;
+
+        for (int i = 0; i < P.length; i += 2) {
+            encipher(lr, 0);
+            P[i] = lr[0];
+            P[i + 1] = lr[1];
+        }
+
+        for (int i = 0; i < S.length; i += 2) {
+            encipher(lr, 0);
+            S[i] = lr[0];
+            S[i + 1] = lr[1];
+        }
+    }
+
+    /**
+     * Same as BCrypt.encipher
+     */
+    private void encipher(int[] lr, int off) {
+        int i, n, l = lr[off], r = lr[off + 1];
+
+        l ^= P[0];
+        for (i = 0; i <= BLOWFISH_NUM_ROUNDS - 2;) {
+            // Feistel substitution on left word
+            n = S[(l >> 24) & 0xff];
+            n += S[0x100 | ((l >> 16) & 0xff)];
+            n ^= S[0x200 | ((l >> 8) & 0xff)];
+            n += S[0x300 | (l & 0xff)];
+            r ^= n ^ P[++i];
+
+            // Feistel substitution on right word
+            n = S[(r >> 24) & 0xff];
+            n += S[0x100 | ((r >> 16) & 0xff)];
+            n ^= S[0x200 | ((r >> 8) & 0xff)];
+            n += S[0x300 | (r & 0xff)];
+            l ^= n ^ P[++i];
+        }
+        lr[off] = r ^ P[BLOWFISH_NUM_ROUNDS + 1];
+        lr[off + 1] = l;
+    }
+
+    /**
+     * Same as BCrypt.streamtowords on the password, correct and buggy word end up in
+     * {@link #wordCorrect} and {@link #wordBug}
+     */
+    private void streamKeyWords() {
+        int correct = 0, bug = 0;
+        for (int i = 0; i < 4; i++) {
+            correct = (correct << 8) | (key[keyOff] & 0xff);
+            bug = (bug << 8) | key[keyOff]; // sign extension bug
+            if (i > 0) {
+                sign |= bug & 0x80;
+            }
+            keyOff = (keyOff + 1) % keyLen;
+        }
+        wordCorrect = correct;
+        wordBug = bug;
+    }
+
+    private int streamSaltWord() {
+        int word = 0;
+        for (int i = 0; i < 4; i++) {
+            word = (word << 8) | (salt[saltOff] & 0xff);
+            saltOff = (saltOff + 1) % BCRYPT_SALT_LEN;
+        }
+        return word;
+    }
+
+    /**
+     * Same bytes as password.getBytes(UTF_8), unpaired surrogates become '?', written in {@link #key}
+     */
+    private void encodeKey(String password, boolean appendNul) {
+        int length = password.length();
+        if (key.length < length * 3 + 1) {
+            key = new byte[length * 3 + 1];
+        }
+
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            char c = password.charAt(i);
+            if (c < 0x80) {
+                key[n++] = (byte) c;
+            }
+            else if (c < 0x800) {
+                key[n++] = (byte) (0xc0 | (c >> 6));
+                key[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+            else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(password.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, password.charAt(++i));
+                    key[n++] = (byte) (0xf0 | (cp >> 18));
+                    key[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    key[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    key[n++] = (byte) (0x80 | (cp & 0x3f));
+                }
+                else {
+                    key[n++] = '?';
+                }
+            }
+            else {
+                key[n++] = (byte) (0xe0 | (c >> 12));
+                key[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                key[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        if (appendNul) {
+            key[n++] = 0;
+        }
+        keyLen = n;
+    }
+
+    /**
+     * Same as BCrypt.decode_base64 on the 22 salt chars starting at begin, written in {@link #salt}
+     * @return the number of decoded bytes
+     */
+    private int decodeSalt(String s, int begin) {
+        int off = 0, slen = 22, olen = 0;
+        byte c1, c2, c3, c4, o;
+
+        while (off < slen - 1 && olen < BCRYPT_SALT_LEN) {
+            c1 = char64(s.charAt(begin + off++));
+            c2 = char64(s.charAt(begin + off++));
+            if (c1 == -1 || c2 == -1) {
+                break;
+            }
+            o = (byte) (c1 << 2);
+            o |= (c2 & 0x30) >> 4;
+            salt[olen] = o;
+            if (++olen >= BCRYPT_SALT_LEN || off >= slen) {
+                break;
+            }
+            c3 = char64(s.charAt(begin + off++));
+            if (c3 == -1) {
+                break;
+            }
+            o = (byte) ((c2 & 0x0f) << 4);
+            o |= (c3 & 0x3c) >> 2;
+            salt[olen] = o;
+            if (++olen >= BCRYPT_SALT_LEN || off >= slen) {
+                break;
+            }
+            c4 = char64(s.charAt(begin + off++));
+            o = (byte) ((c3 & 0x03) << 6);
+            o |= c4;
+            salt[olen] = o;
+            ++olen;
+        }
+        return olen;
+    }
+
+    private static byte char64(char x) {
+        if (x >= BCrypt.index_64.length) {
+            return -1;
+        }
+        return BCrypt.index_64[x];
+    }
+
+    /**
+     * Same as BCrypt.encode_base64, written in {@link #out} from position off
+     * @return the position after the last written char
+     */
+    private int encode_base64(byte[] d, int len, int off) {
+        char[] base64_code = BCrypt.base64_code;
+        int i = 0;
+        int c1, c2;
+
+        while (i < len) {
+            c1 = d[i++] & 0xff;
+            out[off++] = base64_code[(c1 >> 2) & 0x3f];
+            c1 = (c1 & 0x03) << 4;
+            if (i >= len) {
+                out[off++] = base64_code[c1 & 0x3f];
+                break;
+            }
+            c2 = d[i++] & 0xff;
+            c1 |= (c2 >> 4) & 0x0f;
+            out[off++] = base64_code[c1 & 0x3f];
+            c1 = (c2 & 0x0f) << 2;
+            if (i >= len) {
+                out[off++] = base64_code[c1 & 0x3f];
+                break;
+            }
+            c2 = d[i++] & 0xff;
+            c1 |= (c2 >> 6) & 0x03;
+            out[off++] = base64_code[c1 & 0x3f];
+            out[off++] = base64_code[c2 & 0x3f];
+        }
+        return off;
+    }
+}
@@ -0,0 +1,154 @@
+package chandraprasetyo.restful.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Token buckets limiting login attempts per username and per client IP.
+ * <p>
+ * Every attempt takes one token from both buckets, a bucket of {@code capacity} tokens is refilled
+ * completely in {@code refill-period} ms. A successful login refills the username bucket, so only
+ * failed attempts pile up against an account. Buckets are guarded by a fixed set of striped locks
+ * instead of one global lock, and idle buckets are dropped once they would be full again anyway.
+ * <p>
+ * Rejections are counted as {@code auth.login.rejected{key=username|ip}}.
+ */
+@Component
+public class LoginRateLimiter {
+
+    private final boolean enabled;
+
+    private final Limit usernameLimit;
+
+    private final Limit ipLimit;
+
+    private final Object[] locks;
+
+    private final Cache<String, Bucket> buckets;
+
+    private final Counter usernameRejected;
+
+    private final Counter ipRejected;
+
+    public LoginRateLimiter(@Value("${auth.login-limit.enabled:true}") boolean enabled,
+                            @Value("${auth.login-limit.username.capacity:5}") int usernameCapacity,
+                            @Value("${auth.login-limit.username.refill-period:60000}") long usernameRefillPeriod,
+                            @Value("${auth.login-limit.ip.capacity:20}") int ipCapacity,
+                            @Value("${auth.login-limit.ip.refill-period:60000}") long ipRefillPeriod,
+                            @Value("${auth.login-limit.stripes:64}") int stripes,
+                            @Value("${auth.login-limit.maximum-size:100000}") long maximumSize,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.usernameLimit = new Limit(usernameCapacity, usernameRefillPeriod);
+        this.ipLimit = new Limit(ipCapacity, ipRefillPeriod);
+
+        //power of two, so the stripe is a simple mask of the hash
+        this.locks = new Object[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(Duration.ofMillis(Math.max(usernameRefillPeriod, ipRefillPeriod)))
+                .build();
+
+        this.usernameRejected = Counter.builder("auth.login.rejected").tag("key", "username")
+                .description("Login attempts rejected by the rate limiter").register(meterRegistry);
+        this.ipRejected = Counter.builder("auth.login.rejected").tag("key", "ip")
+                .description("Login attempts rejected by the rate limiter").register(meterRegistry);
+    }
+
+    /**
+     * Takes one attempt for the username and the ip.
+     *
+     * @return false when one of them has no attempt left, nothing is taken in that case
+     */
+    public boolean tryAcquire(String username, String ip) {
+        if (!enabled) {
+            return true;
+        }
+
+        String ipKey = ip == null ? null : "ip:" + ip;
+        if (ipKey != null && !take(ipKey, ipLimit)) {
+            ipRejected.increment();
+            return false;
+        }
+
+        if (!take("username:" + username, usernameLimit)) {
+            //give back the ip attempt, this one was not made
+            if (ipKey != null) {
+                refund(ipKey, ipLimit);
+            }
+            usernameRejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    //successful login, the failed attempts before it do not count anymore
+    public void reset(String username) {
+        buckets.invalidate("username:" + username);
+    }
+
+    public void resetAll() {
+        buckets.invalidateAll();
+    }
+
+    private boolean take(String key, Limit limit) {
+        Bucket bucket = buckets.get(key, k -> new Bucket(limit.capacity(), System.nanoTime()));
+        synchronized (lockOf(key)) {
+            bucket.refill(limit, System.nanoTime());
+            if (bucket.tokens < 1) {
+                return false;
+            }
+            bucket.tokens--;
+            return true;
+        }
+    }
+
+    private void refund(String key, Limit limit) {
+        Bucket bucket = buckets.getIfPresent(key);
+        if (bucket != null) {
+            synchronized (lockOf(key)) {
+                bucket.tokens = Math.min(limit.capacity(), bucket.tokens + 1);
+            }
+        }
+    }
+
+    private Object lockOf(String key) {
+        int hash = key.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+
+    private record Limit(int capacity, long refillPeriodMillis) {
+
+        double tokensPerNano() {
+            return (double) capacity / Duration.ofMillis(refillPeriodMillis).toNanos();
+        }
+    }
+
+    //mutable, only touched while holding the lock of its stripe
+    private static class Bucket {
+
+        private double tokens;
+
+        private long refilledAt;
+
+        Bucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+
+        void refill(Limit limit, long now) {
+            tokens = Math.min(limit.capacity(), tokens + (now - refilledAt) * limit.tokensPerNano());
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package chandraprasetyo.restful.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs {@link BCryptEngine} hashing and checking on a dedicated, bounded thread pool.
+ * <p>
+ * At most {@code security.bcrypt.pool-size} hashes run at the same time, so a login storm cannot take
+ * every core away from the other endpoints. When {@code security.bcrypt.queue-capacity} requests are
+ * already waiting, new ones are rejected right away with 503 instead of piling up.
+ * <p>
+ * New hashes use {@code security.bcrypt.log-rounds}. When {@code security.bcrypt.calibrate-millis} is set,
+ * the cost is raised at startup to the highest value still hashing within that time on this machine.
+ * <p>
+ * Salts come from a {@link SecureRandom} created once, shared or per thread depending on
+ * {@code security.bcrypt.salt-random}.
+ */
+@Component
+@Slf4j
+public class PasswordHasher {
+
+    //upper bound for calibration, one hash at 2^20 rounds already takes seconds
+    private static final int MAX_CALIBRATED_LOG_ROUNDS = 20;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${security.bcrypt.pool-size:0}")
+    private int poolSize;
+
+    @Value("${security.bcrypt.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${security.bcrypt.log-rounds:10}")
+    private int logRounds;
+
+    @Value("${security.bcrypt.calibrate-millis:0}")
+    private long calibrateMillis;
+
+    @Value("${security.bcrypt.salt-random:SHARED}")
+    private SaltRandomStrategy saltRandomStrategy;
+
+    //SecureRandom algorithm used for salts, empty = platform default
+    @Value("${security.bcrypt.salt-random-algorithm:}")
+    private String saltRandomAlgorithm;
+
+    private ThreadPoolExecutor executor;
+
+    private Supplier<SecureRandom> saltRandom;
+
+    @PostConstruct
+    public void init() {
+        if (calibrateMillis > 0) {
+            logRounds = calibrate(logRounds, calibrateMillis);
+        }
+        log.info("BCrypt log rounds {}", logRounds);
+
+        if (saltRandomStrategy == SaltRandomStrategy.THREAD_LOCAL) {
+            ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(this::newSecureRandom);
+            saltRandom = random::get;
+        } else {
+            SecureRandom random = newSecureRandom();
+            saltRandom = () -> random;
+        }
+
+        //default to half of the cores, the other half stays for the rest of the application
+        int threads = poolSize > 0 ? poolSize : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        //capacity 0 = nothing waits, busy threads answer 503 right away
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                queue, new HasherThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "bcrypt");
+        log.info("BCrypt executor started with {} threads and queue capacity {}", threads, queueCapacity);
+    }
+
+    public String hash(String password) {
+        return submit(() -> BCryptEngine.hashpw(password, BCrypt.gensalt(logRounds, saltRandom.get())));
+    }
+
+    public boolean check(String password, String hashed) {
+        return submit(() -> BCryptEngine.checkpw(password, hashed));
+    }
+
+    //true when the hash was made with a lower cost than the current one
+    public boolean needsRehash(String hashed) {
+        return logRoundsOf(hashed) < logRounds;
+    }
+
+    private static int logRoundsOf(String hashed) {
+        //$2$10$... or $2a$10$...
+        int offset = hashed.length() > 2 && hashed.charAt(2) == '$' ? 3 : 4;
+        try {
+            return Integer.parseInt(hashed.substring(offset, offset + 2));
+        } catch (RuntimeException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private SecureRandom newSecureRandom() {
+        if (saltRandomAlgorithm.isBlank()) {
+            return new SecureRandom();
+        }
+        try {
+            return SecureRandom.getInstance(saltRandomAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unknown security.bcrypt.salt-random-algorithm " + saltRandomAlgorithm, e);
+        }
+    }
+
+    private static int calibrate(int minimum, long targetMillis) {
+        //warm up the JIT first, otherwise the first measure is way too slow
+        BCrypt.hashpw("calibration", BCrypt.gensalt(4));
+
+        int rounds = minimum;
+        while (rounds < MAX_CALIBRATED_LOG_ROUNDS && measure(rounds + 1) <= targetMillis) {
+            rounds++;
+        }
+        return rounds;
+    }
+
+    private static long measure(int rounds) {
+        long start = System.nanoTime();
+        BCrypt.hashpw("calibration", BCrypt.gensalt(rounds));
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, please try again later");
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, please try again later");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static class HasherThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "bcrypt-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
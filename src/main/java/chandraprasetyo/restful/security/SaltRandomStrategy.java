@@ -0,0 +1,11 @@
+package chandraprasetyo.restful.security;
+
+public enum SaltRandomStrategy {
+
+    //one SecureRandom shared by every hashing thread
+    SHARED,
+
+    //one SecureRandom per hashing thread, no contention on the generator
+    THREAD_LOCAL
+
+}
@@ -0,0 +1,14 @@
+package chandraprasetyo.restful.security;
+
+public enum TokenMode {
+
+    //random token stored in users.token, looked up on every request
+    USER,
+
+    //random token stored hashed in the sessions table, many active sessions per user
+    SESSION,
+
+    //stateless token signed with HMAC, verified without touching the database
+    SIGNED
+
+}
@@ -0,0 +1,95 @@
+package chandraprasetyo.restful.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Issues and verifies self-contained tokens for {@link TokenMode#SIGNED}.
+ * <p>
+ * Format is {@code base64url(username).expiredAt.base64url(HmacSHA256(username.expiredAt))}.
+ */
+@Component
+@Slf4j
+public class TokenSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+
+    //Mac is not thread safe, keep one per request thread
+    private final ThreadLocal<Mac> mac = ThreadLocal.withInitial(this::newMac);
+
+    public TokenSigner(@Value("${auth.token.secret:}") String secret) {
+        byte[] secretBytes;
+        if (secret.isBlank()) {
+            log.warn("auth.token.secret is empty, using a random secret: signed tokens will not survive a restart");
+            secretBytes = new byte[32];
+            new SecureRandom().nextBytes(secretBytes);
+        } else {
+            secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(secretBytes, ALGORITHM);
+    }
+
+    public String sign(String username, long expiredAt) {
+        String payload = ENCODER.encodeToString(username.getBytes(StandardCharsets.UTF_8)) + "." + expiredAt;
+        return payload + "." + ENCODER.encodeToString(signature(payload));
+    }
+
+    /**
+     * @return the claims of the token, or null when the token is malformed or the signature does not match
+     */
+    public SignedToken verify(String token) {
+        int first = token.indexOf('.');
+        int last = token.lastIndexOf('.');
+        if (first <= 0 || last <= first) {
+            return null;
+        }
+
+        try {
+            String payload = token.substring(0, last);
+            byte[] expected = signature(payload);
+            byte[] actual = DECODER.decode(token.substring(last + 1));
+            if (!MessageDigest.isEqual(expected, actual)) {
+                return null;
+            }
+
+            String username = new String(DECODER.decode(token.substring(0, first)), StandardCharsets.UTF_8);
+            long expiredAt = Long.parseLong(token.substring(first + 1, last));
+            return new SignedToken(username, expiredAt);
+        } catch (IllegalArgumentException e) {
+            //bad base64 or expiredAt
+            return null;
+        }
+    }
+
+    private byte[] signature(String payload) {
+        return mac.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac instance = Mac.getInstance(ALGORITHM);
+            instance.init(key);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public record SignedToken(String username, long expiredAt) {
+    }
+}
@@ -3,8 +3,10 @@ package chandraprasetyo.restful.service;
 import chandraprasetyo.restful.entity.Contact;
 import chandraprasetyo.restful.entity.User;
 import chandraprasetyo.restful.model.AddressResponse;
+import chandraprasetyo.restful.model.BulkItemResponse;
 import chandraprasetyo.restful.model.CreateAddressRequest;
 import chandraprasetyo.restful.model.UpdateAddressRequest;
+import chandraprasetyo.restful.model.UpsertAddressRequest;
 
 import java.util.List;
 
@@ -20,4 +22,7 @@ public interface AddressService {
 
     public List<AddressResponse> list(User user, String contactId);
 
+    //creates (no id) or updates (id of an address of the contact) every valid request in one transaction, one result per request
+    public List<BulkItemResponse> upsertAll(User user, String contactId, List<UpsertAddressRequest> requests);
+
 }
@@ -1,21 +1,35 @@
 package chandraprasetyo.restful.service;
 
+import chandraprasetyo.restful.cache.ContactResponseCache;
 import chandraprasetyo.restful.entity.Address;
 import chandraprasetyo.restful.entity.Contact;
 import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.id.IdGenerator;
 import chandraprasetyo.restful.model.AddressResponse;
+import chandraprasetyo.restful.model.BulkItemResponse;
 import chandraprasetyo.restful.model.CreateAddressRequest;
 import chandraprasetyo.restful.model.UpdateAddressRequest;
+import chandraprasetyo.restful.model.UpsertAddressRequest;
 import chandraprasetyo.restful.repository.AddressRepository;
 import chandraprasetyo.restful.repository.ContactRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class AddressServiceImpl implements AddressService{
@@ -29,16 +43,32 @@ public class AddressServiceImpl implements AddressService{
     @Autowired
     private ValidationService validationService;
 
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private ContactResponseCache contactResponseCache;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${address.bulk.chunk-size:500}")
+    private int bulkChunkSize;
+
+    @Value("${address.bulk.max-items:10000}")
+    private int bulkMaxItems;
+
     @Override
     @Transactional
     public AddressResponse create(User user, CreateAddressRequest request) {
         validationService.validate(request);
 
-        Contact contact = contactRepository.findFirstByUserAndId(user, request.getContactId())
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Contact is not found"));
+        checkContactExists(user, request.getContactId());
+        //the id is all the insert needs, no need to load the contact
+        Contact contact = contactRepository.getReferenceById(request.getContactId());
 
         Address address = new Address();
-        address.setId(UUID.randomUUID().toString());
+        address.setId(idGenerator.next());
         address.setContact(contact);
         address.setStreet(request.getStreet());
         address.setCity(request.getCity());
@@ -48,64 +78,162 @@ public class AddressServiceImpl implements AddressService{
 
         addressRepository.save(address);
 
-        return toAddressResponse(address);
+        AddressResponse addressResponse = toAddressResponse(address);
+        contactResponseCache.putAddressAfterCommit(user.getUsername(), request.getContactId(), addressResponse);
+        return addressResponse;
     }
 
     @Override
     @Transactional(readOnly = true)
     public AddressResponse get(User user, String contactId, String addressId) {
-
-        Contact contact = contactRepository.findFirstByUserAndId(user, contactId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Contact is not found"));
-
-        Address address = addressRepository.findFirstByContactAndId(contact, addressId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Address is not found"));
-
-        return toAddressResponse(address);
+        //one query on success, which one is missing is only looked up for the 404
+        return contactResponseCache.getAddress(user.getUsername(), contactId, addressId,
+                        () -> addressRepository.findResponseByUserAndContactIdAndId(user, contactId, addressId))
+                .orElseThrow(() -> {
+                    checkContactExists(user, contactId);
+                    return new ResponseStatusException(HttpStatus.NOT_FOUND, "Address is not found");
+                });
     }
 
     @Override
     @Transactional
     public AddressResponse update(User user, UpdateAddressRequest request) {
         validationService.validate(request);
-        Contact contact = contactRepository.findFirstByUserAndId(user, request.getContactId())
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Contact is not found"));
 
-        Address address = addressRepository.findFirstByContactAndId(contact, request.getAddressId())
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Address is not found"));
-
-        address.setStreet(request.getStreet());
-        address.setCity(request.getCity());
-        address.setProvince(request.getProvince());
-        address.setCountry(request.getCountry());
-        address.setPostalCode(request.getPostalCode());
-        addressRepository.save(address);
-
-        return toAddressResponse(address);
+        //ownership and update in one statement
+        int updated = addressRepository.updateByUserAndContactIdAndId(user, request.getContactId(), request.getAddressId(),
+                request.getVersion(), request.getStreet(), request.getCity(), request.getProvince(), request.getCountry(),
+                request.getPostalCode());
+        if (updated == 0){
+            checkContactExists(user, request.getContactId());
+            //there, but another request updated it since the client read it
+            if (request.getVersion() != null && addressRepository.existsByContactIdAndId(request.getContactId(), request.getAddressId())) {
+                throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Data was changed by another request, please get it again");
+            }
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Address is not found");
+        }
+
+        //every column comes from the request, no need to read the row back
+        AddressResponse addressResponse = AddressResponse.builder()
+                .id(request.getAddressId())
+                .street(request.getStreet())
+                .city(request.getCity())
+                .province(request.getProvince())
+                .country(request.getCountry())
+                .postalCode(request.getPostalCode())
+                .build();
+        //the new version is only in the database, the next get reads it from there
+        contactResponseCache.invalidateAddressAfterCommit(user.getUsername(), request.getContactId(), request.getAddressId());
+        return addressResponse;
     }
 
     @Override
     @Transactional
     public void delete(User user, String contactId, String addressId) {
-        //Find or get contact and address first
-        Contact contact = contactRepository.findFirstByUserAndId(user, contactId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Contact is not found"));
-
-        Address address = addressRepository.findFirstByContactAndId(contact, addressId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Address is not found"));
-
-        addressRepository.delete(address);
-
+        int deleted = addressRepository.deleteByUserAndContactIdAndId(user, contactId, addressId);
+        if (deleted == 0){
+            checkContactExists(user, contactId);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Address is not found");
+        }
+        contactResponseCache.invalidateAddressAfterCommit(user.getUsername(), contactId, addressId);
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<AddressResponse> list(User user, String contactId) {
-        Contact contact = contactRepository.findFirstByUserAndId(user, contactId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Contact is not found"));
+        List<AddressResponse> addresses = contactResponseCache.getAddresses(user.getUsername(), contactId,
+                () -> addressRepository.findResponsesByUserAndContactId(user, contactId));
+        if (addresses.isEmpty()){
+            //no address or no such contact
+            checkContactExists(user, contactId);
+        }
+        return addresses;
+    }
+
+    @Override
+    @Transactional
+    public List<BulkItemResponse> upsertAll(User user, String contactId, List<UpsertAddressRequest> requests) {
+        if (requests.size() > bulkMaxItems){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Too many items, at most " + bulkMaxItems + " per request");
+        }
+        //ownership checked once for the whole batch
+        checkContactExists(user, contactId);
+        Contact contact = contactRepository.getReferenceById(contactId);
+
+        List<BulkItemResponse> results = new ArrayList<>(requests.size());
+        Set<String> seenIds = new HashSet<>();
+        for (int from = 0; from < requests.size(); from += bulkChunkSize) {
+            List<UpsertAddressRequest> chunk = requests.subList(from, Math.min(from + bulkChunkSize, requests.size()));
+            upsertChunk(contact, chunk, from, seenIds, results);
+        }
+        contactResponseCache.invalidateAddressesAfterCommit(user.getUsername(), contactId);
+        return results;
+    }
+
+    private void upsertChunk(Contact contact, List<UpsertAddressRequest> chunk, int offset,
+                             Set<String> seenIds, List<BulkItemResponse> results) {
+        //every address of the chunk that exists under this contact, in one query
+        List<String> ids = chunk.stream()
+                .filter(Objects::nonNull)
+                .map(UpsertAddressRequest::getId)
+                .filter(Objects::nonNull)
+                .toList();
+        Map<String, Address> existing = (ids.isEmpty() ? List.<Address>of() : addressRepository.findAllByContactAndIdIn(contact, ids)).stream()
+                .collect(Collectors.toMap(Address::getId, Function.identity()));
+
+        List<Address> created = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            UpsertAddressRequest request = chunk.get(i);
+            int index = offset + i;
+            if (request == null){
+                results.add(BulkItemResponse.builder().index(index).errors("Item is empty").build());
+                continue;
+            }
+            try {
+                validationService.validate(request);
+            } catch (ConstraintViolationException e) {
+                results.add(BulkItemResponse.builder().index(index).errors(e.getMessage()).build());
+                continue;
+            }
+            if (request.getId() != null && !seenIds.add(request.getId())){
+                results.add(BulkItemResponse.builder().index(index).errors("Duplicate id in request").build());
+                continue;
+            }
+
+            Address address;
+            if (request.getId() == null){
+                //ids are always ours, time ordered, never taken from the client
+                address = new Address();
+                address.setId(idGenerator.next());
+                address.setContact(contact);
+                created.add(address);
+            } else {
+                address = existing.get(request.getId());
+                if (address == null){
+                    //unknown or address of another contact, the same answer for both
+                    results.add(BulkItemResponse.builder().index(index).errors("Address is not found").build());
+                    continue;
+                }
+            }
+            //existing ones are updated by dirty checking
+            address.setStreet(request.getStreet());
+            address.setCity(request.getCity());
+            address.setProvince(request.getProvince());
+            address.setCountry(request.getCountry());
+            address.setPostalCode(request.getPostalCode());
+            results.add(BulkItemResponse.builder().index(index).id(address.getId()).build());
+        }
+
+        //inserts and updates go out in JDBC batches, then the chunk is dropped from memory
+        addressRepository.saveAll(created);
+        entityManager.flush();
+        entityManager.clear();
+    }
 
-        List<Address> addresses = addressRepository.findAllByContact(contact);
-        return addresses.stream().map(this::toAddressResponse).toList();
+    private void checkContactExists(User user, String contactId) {
+        if (!contactRepository.existsByUserAndId(user, contactId)){
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Contact is not found");
+        }
     }
 
     private AddressResponse toAddressResponse(Address address) {
@@ -116,6 +244,7 @@ public class AddressServiceImpl implements AddressService{
                 .province(address.getProvince())
                 .country(address.getCountry())
                 .postalCode(address.getPostalCode())
+                .version(address.getVersion())
                 .build();
     }
 }
@@ -9,6 +9,6 @@ public interface AuthService {
 
     public TokenResponse login(LoginUserRequest request);
 
-    public void logout(User user);
+    public void logout(User user, String token);
 
 }
@@ -1,14 +1,25 @@
 package chandraprasetyo.restful.service;
 
+import chandraprasetyo.restful.cache.NegativeLookupCache;
+import chandraprasetyo.restful.cache.SessionCache;
 import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.entity.UserSession;
 import chandraprasetyo.restful.model.LoginUserRequest;
 import chandraprasetyo.restful.model.TokenResponse;
 import chandraprasetyo.restful.repository.UserRepository;
-import chandraprasetyo.restful.security.BCrypt;
+import chandraprasetyo.restful.repository.UserSessionRepository;
+import chandraprasetyo.restful.security.LoginRateLimiter;
+import chandraprasetyo.restful.security.PasswordHasher;
+import chandraprasetyo.restful.security.TokenDigest;
+import chandraprasetyo.restful.security.TokenMode;
+import chandraprasetyo.restful.security.TokenSigner;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.UUID;
@@ -19,34 +30,123 @@ public class AuthServiceImpl implements AuthService{
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserSessionRepository userSessionRepository;
+
     @Autowired
     private ValidationService validationService;
 
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private SessionCache sessionCache;
+
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+
+    @Autowired
+    private NegativeLookupCache negativeLookupCache;
+
+    @Autowired
+    private TokenSigner tokenSigner;
+
+    @Value("${auth.token.mode:USER}")
+    private TokenMode tokenMode;
+
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    //no transaction around it, a connection is only taken for the user lookup and again for the writes,
+    //never while the password waits for BCrypt
     @Override
-    @Transactional
     public TokenResponse login(LoginUserRequest request) {
         validationService.validate(request);
 
-        User user = userRepository.findById(request.getUsername())
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Username or Password is wrong"));
+        //before any database lookup or hashing, so a burst of attempts stays cheap
+        if (!loginRateLimiter.tryAcquire(request.getUsername(), request.getRemoteAddress())){
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many login attempts, please try again later");
+        }
 
-        //check if user input/request password == user password in database
-        if(BCrypt.checkpw(request.getPassword(), user.getPassword())){
-            //success login
-            user.setToken(UUID.randomUUID().toString());
-            user.setTokenExpiredAt(nextMonth());
-            userRepository.save(user);
+        //same unknown username again, answer without a query
+        if (negativeLookupCache.isUnknownUsername(request.getUsername())){
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Username or Password is wrong");
+        }
+
+        User user = userRepository.findById(request.getUsername()).orElse(null);
+        if (user == null){
+            negativeLookupCache.unknownUsername(request.getUsername());
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Username or Password is wrong");
+        }
 
-            //return Response Body
-            return TokenResponse.builder()
-                    .token(user.getToken())
-                    .expiredAt(user.getTokenExpiredAt())
-                    .build();
-        }else {
+        //check if user input/request password == user password in database
+        if (!passwordHasher.check(request.getPassword(), user.getPassword())){
             //failed login, throw exception
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Username or Password is wrong");
         }
+        loginRateLimiter.reset(user.getUsername());
+
+        //stored with an outdated cost, upgrade it now while we have the plain password
+        String rehashed = passwordHasher.needsRehash(user.getPassword()) ? passwordHasher.hash(request.getPassword()) : null;
+
+        if (tokenMode == TokenMode.SIGNED && rehashed == null){
+            //stateless token, nothing to write in database
+            return signedToken(user);
+        }
+        return new TransactionTemplate(transactionManager).execute(status -> issueToken(user, rehashed));
+    }
+
+    private TokenResponse issueToken(User user, String rehashed){
+        if (rehashed != null){
+            user.setPassword(rehashed);
+            userRepository.save(user);
+        }
+
+        if (tokenMode == TokenMode.SIGNED){
+            return signedToken(user);
+        }
+
+        if (tokenMode == TokenMode.SESSION){
+            return createSession(user);
+        }
+
+        //success login, previous token is replaced so drop it from cache
+        sessionCache.invalidate(user.getToken());
+        user.setToken(UUID.randomUUID().toString());
+        user.setTokenExpiredAt(nextMonth());
+        userRepository.save(user);
+
+        //return Response Body
+        return TokenResponse.builder()
+                .token(user.getToken())
+                .expiredAt(user.getTokenExpiredAt())
+                .build();
+    }
+
+    private TokenResponse signedToken(User user){
+        Long expiredAt = nextMonth();
+        return TokenResponse.builder()
+                .token(tokenSigner.sign(user.getUsername(), expiredAt))
+                .expiredAt(expiredAt)
+                .build();
+    }
+
+    private TokenResponse createSession(User user){
+        //new row per login, other devices keep their sessions and the users row is not touched
+        userSessionRepository.deleteExpiredByUser(user, System.currentTimeMillis());
+
+        String token = UUID.randomUUID().toString();
+        UserSession session = new UserSession();
+        session.setTokenHash(TokenDigest.sha256(token));
+        session.setUser(user);
+        session.setExpiredAt(nextMonth());
+        userSessionRepository.save(session);
+
+        return TokenResponse.builder()
+                .token(token)
+                .expiredAt(session.getExpiredAt())
+                .build();
     }
 
     private Long nextMonth(){
@@ -55,7 +155,20 @@ public class AuthServiceImpl implements AuthService{
     }
 
     @Override
-    public void logout(User user) {
+    @Transactional
+    public void logout(User user, String token) {
+        if (tokenMode == TokenMode.SIGNED){
+            //signed token is not stored anywhere, client just discard it (still valid until expired)
+            return;
+        }
+        if (tokenMode == TokenMode.SESSION){
+            //only this session, other sessions of the user stay logged in
+            sessionCache.invalidate(token);
+            userSessionRepository.deleteById(TokenDigest.sha256(token));
+            return;
+        }
+
+        sessionCache.invalidate(user.getToken());
         user.setToken(null);
         user.setTokenExpiredAt(null);
 
@@ -0,0 +1,33 @@
+package chandraprasetyo.restful.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursor of the contact search, the id of the last contact of a window.
+ * Clients only pass it back, they should never build one.
+ */
+public final class ContactCursor {
+
+    private ContactCursor() {
+    }
+
+    public static String encode(String contactId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(contactId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //null or empty = first window
+    public static String decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+}
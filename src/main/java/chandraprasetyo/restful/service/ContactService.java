@@ -1,18 +1,30 @@
 package chandraprasetyo.restful.service;
 
 import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.BulkItemResponse;
 import chandraprasetyo.restful.model.ContactResponse;
 import chandraprasetyo.restful.model.CreateContactRequest;
 import chandraprasetyo.restful.model.SearchContactRequest;
 import chandraprasetyo.restful.model.UpdateContactRequest;
 import chandraprasetyo.restful.repository.ContactRepository;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+
 public interface ContactService {
 
     public ContactResponse create(User user, CreateContactRequest request);
 
+    //every request is validated on its own, valid ones are saved in chunks of one transaction each.
+    //an item next() cannot read (RuntimeJsonMappingException) is reported like an invalid one, reading stops after max-items
+    public List<BulkItemResponse> createAll(User user, Iterator<CreateContactRequest> requests);
+
     public ContactResponse get(User user, String id);
 
     public ContactResponse update(User user, UpdateContactRequest request);
@@ -21,4 +33,15 @@ public interface ContactService {
 
     public Page<ContactResponse> search(User user, SearchContactRequest request);
 
+    //same as search without the total count
+    public Slice<ContactResponse> slice(User user, SearchContactRequest request);
+
+    //every contact of the user as NDJSON, one line per contact
+    public void export(User user, boolean withAddresses, OutputStream outputStream) throws IOException;
+
+    public Window<ContactResponse> scroll(User user, SearchContactRequest request);
+
+    //copies of the contacts with their addresses, loaded for all of them in one query
+    public List<ContactResponse> withAddresses(List<ContactResponse> contacts);
+
 }
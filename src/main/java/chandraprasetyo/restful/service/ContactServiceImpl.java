@@ -1,39 +1,98 @@
 package chandraprasetyo.restful.service;
 
+import chandraprasetyo.restful.cache.ContactCountCache;
+import chandraprasetyo.restful.cache.ContactResponseCache;
 import chandraprasetyo.restful.entity.Contact;
 import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.id.IdGenerator;
+import chandraprasetyo.restful.model.AddressResponse;
+import chandraprasetyo.restful.model.BulkItemResponse;
 import chandraprasetyo.restful.model.ContactResponse;
 import chandraprasetyo.restful.model.CreateContactRequest;
 import chandraprasetyo.restful.model.SearchContactRequest;
 import chandraprasetyo.restful.model.UpdateContactRequest;
+import chandraprasetyo.restful.repository.AddressRepository;
 import chandraprasetyo.restful.repository.ContactRepository;
+import chandraprasetyo.restful.search.ContactSearchIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.validation.ConstraintViolationException;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+@Slf4j
 @Service
 public class ContactServiceImpl implements ContactService {
 
     @Autowired
     private ContactRepository contactRepository;
 
+    @Autowired
+    private AddressRepository addressRepository;
+
     @Autowired
     private ValidationService validationService;
 
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private ContactSearchIndex contactSearchIndex;
+
+    @Autowired
+    private ContactCountCache contactCountCache;
+
+    @Autowired
+    private ContactResponseCache contactResponseCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${contact.bulk.chunk-size:500}")
+    private int bulkChunkSize;
+
+    @Value("${contact.bulk.max-items:10000}")
+    private int bulkMaxItems;
+
     private ContactResponse toContactResponse(Contact contact){
         return ContactResponse.builder()
                 .id(contact.getId())
@@ -41,6 +100,7 @@ public class ContactServiceImpl implements ContactService {
                 .lastName(contact.getLastName())
                 .email(contact.getEmail())
                 .phone(contact.getPhone())
+                .version(contact.getVersion())
                 .build();
     }
 
@@ -50,24 +110,110 @@ public class ContactServiceImpl implements ContactService {
         validationService.validate(request);
 
         Contact contact = new Contact();
-        contact.setId(UUID.randomUUID().toString());
+        contact.setId(idGenerator.next());
         contact.setFirstName(request.getFirstName());
         contact.setLastName(request.getLastName());
         contact.setEmail(request.getEmail());
         contact.setPhone(request.getPhone());
-        contact.setUser(user);
+        contact.setUser(userReference(user));
 
         contactRepository.save(contact);
+        contactSearchIndex.indexAfterCommit(contact);
+        contactCountCache.invalidateUserAfterCommit(user.getUsername());
 
         return toContactResponse(contact);
     }
 
+    @Override
+    public List<BulkItemResponse> createAll(User user, Iterator<CreateContactRequest> requests) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        User owner = userReference(user);
+        List<BulkItemResponse> results = new ArrayList<>();
+        List<Contact> chunk = new ArrayList<>(bulkChunkSize);
+        List<BulkItemResponse> chunkResults = new ArrayList<>(bulkChunkSize);
+
+        for (int index = 0; requests.hasNext(); index++) {
+            if (index >= bulkMaxItems){
+                //one entry for the rest, which is not even read
+                results.add(BulkItemResponse.builder().index(index).errors("Too many items, at most " + bulkMaxItems + " per request, items from here on are ignored").build());
+                break;
+            }
+            CreateContactRequest request;
+            try {
+                request = requests.next();
+            } catch (RuntimeJsonMappingException e) {
+                results.add(BulkItemResponse.builder().index(index).errors("Invalid JSON: " + e.getMessage()).build());
+                continue;
+            }
+            if (request == null){
+                results.add(BulkItemResponse.builder().index(index).errors("Item is empty").build());
+                continue;
+            }
+            try {
+                validationService.validate(request);
+            } catch (ConstraintViolationException e) {
+                results.add(BulkItemResponse.builder().index(index).errors(e.getMessage()).build());
+                continue;
+            }
+
+            Contact contact = new Contact();
+            contact.setId(idGenerator.next());
+            contact.setFirstName(request.getFirstName());
+            contact.setLastName(request.getLastName());
+            contact.setEmail(request.getEmail());
+            contact.setPhone(request.getPhone());
+            contact.setUser(owner);
+            chunk.add(contact);
+            BulkItemResponse result = BulkItemResponse.builder().index(index).id(contact.getId()).build();
+            chunkResults.add(result);
+            results.add(result);
+
+            if (chunk.size() == bulkChunkSize){
+                saveChunk(transactionTemplate, user, chunk, chunkResults);
+            }
+        }
+        if (!chunk.isEmpty()){
+            saveChunk(transactionTemplate, user, chunk, chunkResults);
+        }
+        return results;
+    }
+
+    //the user may be a cached copy, Hibernate would select it to know if it is transient, a reference it trusts
+    private User userReference(User user) {
+        return entityManager.getReference(User.class, user.getUsername());
+    }
+
+    //earlier chunks are committed already, a failing chunk only turns its own items into errors
+    private void saveChunk(TransactionTemplate transactionTemplate, User user, List<Contact> chunk, List<BulkItemResponse> chunkResults) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                //inserts go out in JDBC batches of hibernate.jdbc.batch_size
+                contactRepository.saveAll(chunk);
+                contactSearchIndex.indexAllAfterCommit(user, chunk);
+                contactCountCache.invalidateUserAfterCommit(user.getUsername());
+
+                //the request keeps one persistence context (open in view), do not let it grow chunk after chunk
+                entityManager.flush();
+                entityManager.clear();
+            });
+        } catch (RuntimeException e) {
+            log.warn("Bulk import of {} contacts for {} failed", chunk.size(), user.getUsername(), e);
+            //nothing of the rolled back chunk may stay in the persistence context
+            entityManager.clear();
+            chunkResults.forEach(result -> {
+                result.setId(null);
+                result.setErrors("Not saved, please send this item again");
+            });
+        }
+        chunk.clear();
+        chunkResults.clear();
+    }
+
     @Override
     @Transactional(readOnly = true)
     public ContactResponse get(User user, String id) {
-        Contact contact = contactRepository.findFirstByUserAndId(user, id)
+        return contactResponseCache.getContact(user.getUsername(), id, () -> contactRepository.findResponseByUserAndId(user, id))
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Contact not found"));
-        return toContactResponse(contact);
     }
 
     @Override
@@ -83,10 +229,15 @@ public class ContactServiceImpl implements ContactService {
         contact.setLastName(request.getLastName());
         contact.setEmail(request.getEmail());
         contact.setPhone(request.getPhone());
-        contactRepository.save(contact);
+        //flushed now, the response and the cache get the new version
+        contactRepository.saveAndFlush(contact);
+        contactSearchIndex.indexAfterCommit(contact);
+        contactCountCache.invalidateUserAfterCommit(user.getUsername());
 
-        //return ContactResponse
-        return toContactResponse(contact);
+        //return ContactResponse, the same instance is cached, not touched after this
+        ContactResponse contactResponse = toContactResponse(contact);
+        contactResponseCache.putContactAfterCommit(user.getUsername(), contactResponse);
+        return contactResponse;
 
     }
 
@@ -97,38 +248,153 @@ public class ContactServiceImpl implements ContactService {
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Contact not found"));
 
         contactRepository.delete(contact);
+        contactSearchIndex.removeAfterCommit(user, contactId);
+        contactCountCache.invalidateUserAfterCommit(user.getUsername());
+        contactResponseCache.invalidateContactAfterCommit(user.getUsername(), contactId);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Page<ContactResponse> search(User user, SearchContactRequest request) {
-        Specification<Contact> specification = (root, query, builder) -> {
+        //null when the user has too many contacts for the index
+        Page<String> ids = contactSearchIndex.canSearch(request) ? contactSearchIndex.search(user, request) : null;
+        if (ids != null){
+            //index gives the ids of the page, only those rows are read
+            return new PageImpl<>(findAllInOrder(user, ids.getContent()), ids.getPageable(), ids.getTotalElements());
+        }
+
+        Specification<Contact> specification = specification(user, request);
+        Pageable pageable = PageRequest.of(request.getPage(), request.getSize());
+        List<ContactResponse> contactResponses = contactRepository.findSlice(specification, pageable).getContent();
+        //count only when the page alone does not tell the total, and once per user and filter
+        return PageableExecutionUtils.getPage(contactResponses, pageable,
+                () -> contactCountCache.get(user.getUsername(), request, () -> contactRepository.count(specification)));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<ContactResponse> slice(User user, SearchContactRequest request) {
+        Slice<String> ids = contactSearchIndex.canSearch(request) ? contactSearchIndex.slice(user, request) : null;
+        if (ids != null){
+            //index gives the ids of the page, matching stops after it
+            return new SliceImpl<>(findAllInOrder(user, ids.getContent()), ids.getPageable(), ids.hasNext());
+        }
+
+        Pageable pageable = PageRequest.of(request.getPage(), request.getSize());
+        return contactRepository.findSlice(specification(user, request), pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void export(User user, boolean withAddresses, OutputStream outputStream) throws IOException {
+        //written while read from the cursor, nothing is collected in memory
+        try (Stream<ContactResponse> contacts = contactRepository.streamAll(user, withAddresses)) {
+            Iterator<ContactResponse> iterator = contacts.iterator();
+            while (iterator.hasNext()) {
+                outputStream.write(objectMapper.writeValueAsBytes(iterator.next()));
+                outputStream.write('\n');
+            }
+        }
+        outputStream.flush();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Window<ContactResponse> scroll(User user, SearchContactRequest request) {
+        validationService.validate(request);
+        String afterId = ContactCursor.decode(request.getCursor());
+
+        Window<String> ids = contactSearchIndex.canSearch(request) ? contactSearchIndex.scroll(user, request, afterId) : null;
+        if (ids != null){
+            List<ContactResponse> contactResponses = findAllInOrder(user, ids.getContent());
+            //every contact of the window deleted in the meantime, go on with the next one
+            while (contactResponses.isEmpty() && ids.hasNext()){
+                Window<String> next = contactSearchIndex.scroll(user, request, ids.getContent().get(ids.size() - 1));
+                if (next == null){
+                    //no longer indexed, the client goes on from this window's cursor
+                    break;
+                }
+                ids = next;
+                contactResponses = findAllInOrder(user, ids.getContent());
+            }
+            //the last position is the last id of the index window, even when that contact is gone
+            String lastId = ids.isEmpty() ? null : ids.getContent().get(ids.size() - 1);
+            List<ContactResponse> content = contactResponses;
+            return Window.from(content, i -> ScrollPosition.forward(Map.of("id",
+                    i == content.size() - 1 ? lastId : content.get(i).getId())), ids.hasNext());
+        }
+
+        //seek by id instead of offset, no count query either
+        ScrollPosition position = afterId == null ? ScrollPosition.keyset() : ScrollPosition.forward(Map.of("id", afterId));
+        Window<Contact> contacts = contactRepository.findBy(specification(user, request), query -> query
+                .sortBy(Sort.by("id"))
+                .limit(request.getSize())
+                .scroll(position));
+        return contacts.map(this::toContactResponse);
+    }
+
+    private Specification<Contact> specification(User user, SearchContactRequest request) {
+        return (root, query, builder) -> {
             List<Predicate> predicates = new ArrayList<>();
             predicates.add(builder.equal(root.get("user"), user));
             if (Objects.nonNull(request.getName())){
                 predicates.add(builder.or(
-                        builder.like(root.get("firstName"), "%"+request.getName()+"%"),
-                        builder.like(root.get("lastName"), "%"+request.getName()+"%")
+                        builder.like(root.get("firstName"), contains(request.getName()), '\\'),
+                        builder.like(root.get("lastName"), contains(request.getName()), '\\')
                 ));
             }
             if (Objects.nonNull(request.getEmail())){
                 predicates.add(
-                        builder.like(root.get("email"), "%"+request.getEmail()+"%")
+                        builder.like(root.get("email"), contains(request.getEmail()), '\\')
                 );
             }
             if (Objects.nonNull(request.getPhone())){
                 predicates.add(
-                        builder.like(root.get("phone"), "%"+request.getPhone()+"%")
+                        builder.like(root.get("phone"), contains(request.getPhone()), '\\')
                 );
             }
             return query.where(predicates.toArray(new Predicate[]{})).getRestriction();
         };
+    }
 
-        Pageable pageable = PageRequest.of(request.getPage(), request.getSize());
-        Page<Contact> contacts = contactRepository.findAll(specification, pageable);
-        List<ContactResponse> contactResponses = contacts.getContent().stream()
-                .map(this::toContactResponse)
+    //% and _ of the query are matched literally, like the search index does
+    private static String contains(String query) {
+        return "%" + query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    //in the order of the given ids, a contact deleted in the meantime (or not of the user) is skipped
+    private List<ContactResponse> findAllInOrder(User user, List<String> ids) {
+        if (ids.isEmpty()){
+            return List.of();
+        }
+        Map<String, ContactResponse> contacts = contactRepository.findResponsesByUserAndIdIn(user, ids).stream()
+                .collect(Collectors.toMap(ContactResponse::getId, Function.identity()));
+
+        return ids.stream()
+                .map(contacts::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ContactResponse> withAddresses(List<ContactResponse> contacts) {
+        if (contacts.isEmpty()) {
+            return contacts;
+        }
+
+        //one IN query for the whole page instead of one query per contact
+        List<String> contactIds = contacts.stream().map(ContactResponse::getId).toList();
+        Map<String, List<AddressResponse>> addresses = new HashMap<>();
+        for (Object[] row : addressRepository.findResponsesByContactIdIn(contactIds)) {
+            addresses.computeIfAbsent((String) row[0], contactId -> new ArrayList<>()).add((AddressResponse) row[1]);
+        }
+
+        //new responses, the given ones may be shared with a cache
+        return contacts.stream()
+                .map(contact -> new ContactResponse(contact.getId(), contact.getFirstName(), contact.getLastName(),
+                        contact.getEmail(), contact.getPhone(), contact.getVersion(),
+                        addresses.getOrDefault(contact.getId(), new ArrayList<>())))
                 .toList();
-        return new PageImpl<>(contactResponses, pageable, contacts.getTotalElements());
     }
 }
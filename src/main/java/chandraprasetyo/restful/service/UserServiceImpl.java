@@ -1,15 +1,20 @@
 package chandraprasetyo.restful.service;
 
+import chandraprasetyo.restful.cache.NegativeLookupCache;
+import chandraprasetyo.restful.cache.SessionCache;
 import chandraprasetyo.restful.entity.User;
 import chandraprasetyo.restful.model.RegisterUserRequest;
 import chandraprasetyo.restful.model.UpdateUserRequest;
 import chandraprasetyo.restful.model.UserResponse;
 import chandraprasetyo.restful.repository.UserRepository;
-import chandraprasetyo.restful.security.BCrypt;
+import chandraprasetyo.restful.security.PasswordHasher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Objects;
@@ -23,8 +28,20 @@ public class UserServiceImpl implements UserService{
     @Autowired
     private ValidationServiceImpl validationService;
 
+    @Autowired
+    private SessionCache sessionCache;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private NegativeLookupCache negativeLookupCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    //no transaction around the hashing, only the insert takes a connection for its own short transaction
     @Override
-    @Transactional
     public void register(RegisterUserRequest request) {
         validationService.validate(request);
 
@@ -32,14 +49,30 @@ public class UserServiceImpl implements UserService{
         if (userRepository.existsById(request.getUsername())){
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Username already registered");
         }
+        String password = passwordHasher.hash(request.getPassword());
 
-        // register or insert into
-        User user = new User();
-        user.setUsername(request.getUsername());
-        user.setPassword(BCrypt.hashpw(request.getPassword(), BCrypt.gensalt()));
-        user.setName(request.getName());
-        userRepository.save(user);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            //checked again, somebody may have registered it while the password was hashed
+            if (userRepository.existsById(request.getUsername())){
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Username already registered");
+            }
+
+            // register or insert into
+            User user = new User();
+            user.setUsername(request.getUsername());
+            user.setPassword(password);
+            user.setName(request.getName());
+            userRepository.save(user);
 
+            //after commit, a login failing before that would remember the username as unknown again
+            String username = user.getUsername();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    negativeLookupCache.forgetUsername(username);
+                }
+            });
+        });
     }
 
     @Override
@@ -65,10 +98,12 @@ public class UserServiceImpl implements UserService{
             if (request.getPassword().trim().isEmpty()){
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Password cannot be null");
             }
-            user.setPassword(BCrypt.hashpw(request.getPassword(), BCrypt.gensalt()));
+            user.setPassword(passwordHasher.hash(request.getPassword()));
         }
 
         userRepository.save(user);
+        //cached sessions still hold the old name/password
+        sessionCache.invalidateUser(user.getUsername());
         return UserResponse.builder()
                 .name(user.getName())
                 .username(user.getUsername())
@@ -0,0 +1,12 @@
+-- Sessions of auth.token.mode=SESSION, many per user.
+-- IF NOT EXISTS: databases made from database.sql while it listed this table already have it
+
+CREATE TABLE IF NOT EXISTS `sessions` (
+  `token_hash` char(64) NOT NULL,
+  `username` varchar(100) NOT NULL,
+  `expired_at` bigint NOT NULL,
+  PRIMARY KEY (`token_hash`),
+  KEY `fk_users_sessions` (`username`),
+  KEY `idx_sessions_expired_at` (`expired_at`),
+  CONSTRAINT `sessions_ibfk_1` FOREIGN KEY (`username`) REFERENCES `users` (`username`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
@@ -0,0 +1,21 @@
+-- Indexes for the queries of ContactRepository, AddressRepository and UserRepository,
+-- checked by QueryPlanTest
+
+-- contacts of a user in id order: ownership checks, search pages, cursor scroll, export.
+-- replaces the plain username index, the foreign key uses the new one
+ALTER TABLE `contacts`
+  ADD KEY `idx_contacts_username_id` (`username`, `id`),
+  DROP KEY `fk_users_contacts`;
+
+-- like '%x%' search of a user, the filter and the count run inside the index without reading rows
+ALTER TABLE `contacts`
+  ADD KEY `idx_contacts_username_search` (`username`, `first_name`, `last_name`, `email`, `phone`);
+
+-- addresses of a contact in id order, also for the IN query of embed=addresses
+ALTER TABLE `addresses`
+  ADD KEY `idx_addresses_contact_id_id` (`contact_id`, `id`),
+  DROP KEY `fk_contacts_addresses`;
+
+-- expired token reaper
+ALTER TABLE `users`
+  ADD KEY `idx_users_token_expired_at` (`token_expired_at`);
@@ -0,0 +1,7 @@
+-- Optimistic locking of contacts and addresses, also the ETag of their responses
+
+ALTER TABLE `contacts`
+  ADD COLUMN `version` bigint NOT NULL DEFAULT 0;
+
+ALTER TABLE `addresses`
+  ADD COLUMN `version` bigint NOT NULL DEFAULT 0;
@@ -0,0 +1,30 @@
+-- Contact and address ids as bytes, same conversion as IdBytesType:
+-- a lowercase canonical UUID becomes its 16 bytes, any other id keeps its UTF-8 bytes,
+-- with one 0x00 more when that is exactly 16 bytes (only UUIDs are 16 bytes long).
+-- 401 = 100 utf8mb4 chars of the old varchar(100) plus that 0x00
+
+ALTER TABLE `addresses` DROP FOREIGN KEY `addresses_ibfk_1`;
+
+-- varchar to varbinary keeps the UTF-8 bytes
+ALTER TABLE `contacts`
+  MODIFY `id` varbinary(401) NOT NULL;
+
+ALTER TABLE `addresses`
+  MODIFY `id` varbinary(401) NOT NULL,
+  MODIFY `contact_id` varbinary(401) NOT NULL;
+
+-- legacy ids of 16 bytes first, afterwards no other id is 16 bytes long and the UUIDs cannot collide
+UPDATE `contacts` SET `id` = CONCAT(`id`, X'00') WHERE LENGTH(`id`) = 16;
+UPDATE `addresses` SET `id` = CONCAT(`id`, X'00') WHERE LENGTH(`id`) = 16;
+UPDATE `addresses` SET `contact_id` = CONCAT(`contact_id`, X'00') WHERE LENGTH(`contact_id`) = 16;
+
+-- case-sensitive match ('c'), an upper case UUID stays a legacy id
+UPDATE `contacts` SET `id` = UNHEX(REPLACE(`id`, '-', ''))
+  WHERE REGEXP_LIKE(CONVERT(`id` USING utf8mb4), '^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$', 'c');
+UPDATE `addresses` SET `id` = UNHEX(REPLACE(`id`, '-', ''))
+  WHERE REGEXP_LIKE(CONVERT(`id` USING utf8mb4), '^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$', 'c');
+UPDATE `addresses` SET `contact_id` = UNHEX(REPLACE(`contact_id`, '-', ''))
+  WHERE REGEXP_LIKE(CONVERT(`contact_id` USING utf8mb4), '^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$', 'c');
+
+ALTER TABLE `addresses`
+  ADD CONSTRAINT `addresses_ibfk_1` FOREIGN KEY (`contact_id`) REFERENCES `contacts` (`id`);
@@ -0,0 +1,37 @@
+-- Ids in lower case, the API lowercases ids from clients (IdBytesType.normalize) so lookups ignore case
+-- like the varchar ids with their _ci collation did before V5.
+-- Only ids stored as UTF-8 change (every length but 16): lowercased without the 0x00 of V5, then stored
+-- again like IdBytesType does, a UUID as its 16 bytes, 16 bytes long with one 0x00 more, the rest as is.
+-- No two ids differ only in case, the _ci primary key did not allow it and new ids are lower case.
+
+ALTER TABLE `addresses` DROP FOREIGN KEY `addresses_ibfk_1`;
+
+UPDATE `contacts` SET `id` = CASE
+    WHEN REGEXP_LIKE(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `id`) USING utf8mb4)), '^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$', 'c')
+      THEN UNHEX(REPLACE(CONVERT(TRIM(TRAILING X'00' FROM `id`) USING utf8mb4), '-', ''))
+    WHEN LENGTH(CONVERT(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `id`) USING utf8mb4)) USING binary)) = 16
+      THEN CONCAT(CONVERT(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `id`) USING utf8mb4)) USING binary), X'00')
+    ELSE CONVERT(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `id`) USING utf8mb4)) USING binary)
+  END
+  WHERE LENGTH(`id`) <> 16;
+
+UPDATE `addresses` SET `id` = CASE
+    WHEN REGEXP_LIKE(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `id`) USING utf8mb4)), '^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$', 'c')
+      THEN UNHEX(REPLACE(CONVERT(TRIM(TRAILING X'00' FROM `id`) USING utf8mb4), '-', ''))
+    WHEN LENGTH(CONVERT(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `id`) USING utf8mb4)) USING binary)) = 16
+      THEN CONCAT(CONVERT(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `id`) USING utf8mb4)) USING binary), X'00')
+    ELSE CONVERT(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `id`) USING utf8mb4)) USING binary)
+  END
+  WHERE LENGTH(`id`) <> 16;
+
+UPDATE `addresses` SET `contact_id` = CASE
+    WHEN REGEXP_LIKE(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `contact_id`) USING utf8mb4)), '^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$', 'c')
+      THEN UNHEX(REPLACE(CONVERT(TRIM(TRAILING X'00' FROM `contact_id`) USING utf8mb4), '-', ''))
+    WHEN LENGTH(CONVERT(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `contact_id`) USING utf8mb4)) USING binary)) = 16
+      THEN CONCAT(CONVERT(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `contact_id`) USING utf8mb4)) USING binary), X'00')
+    ELSE CONVERT(LOWER(CONVERT(TRIM(TRAILING X'00' FROM `contact_id`) USING utf8mb4)) USING binary)
+  END
+  WHERE LENGTH(`contact_id`) <> 16;
+
+ALTER TABLE `addresses`
+  ADD CONSTRAINT `addresses_ibfk_1` FOREIGN KEY (`contact_id`) REFERENCES `contacts` (`id`);
@@ -0,0 +1,46 @@
+package chandraprasetyo.restful.cache;
+
+import chandraprasetyo.restful.model.SearchContactRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContactCountCacheTest {
+
+    private final ContactCountCache cache = new ContactCountCache(1000, 60000, new SimpleMeterRegistry());
+
+    private final AtomicInteger counts = new AtomicInteger();
+
+    @Test
+    void invalidateUserDropsOnlyThatUser() {
+        SearchContactRequest chandra = SearchContactRequest.builder().name("chandra").build();
+        SearchContactRequest budi = SearchContactRequest.builder().name("budi").build();
+
+        assertEquals(1, count("first", chandra, 1));
+        assertEquals(2, count("first", budi, 2));
+        assertEquals(3, count("second", chandra, 3));
+        assertEquals(3, counts.get());
+
+        cache.invalidateUser("first");
+
+        //every filter of the user is counted again, the other user is not
+        assertEquals(10, count("first", chandra, 10));
+        assertEquals(20, count("first", budi, 20));
+        assertEquals(3, count("second", chandra, 30));
+        assertEquals(5, counts.get());
+
+        //the new counts stay until the next change
+        assertEquals(10, count("first", chandra, 100));
+        assertEquals(5, counts.get());
+    }
+
+    private long count(String username, SearchContactRequest request, long total) {
+        return cache.get(username, request, () -> {
+            counts.incrementAndGet();
+            return total;
+        });
+    }
+}
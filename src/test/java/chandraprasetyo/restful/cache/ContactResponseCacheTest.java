@@ -0,0 +1,66 @@
+package chandraprasetyo.restful.cache;
+
+import chandraprasetyo.restful.model.AddressResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContactResponseCacheTest {
+
+    private final ContactResponseCache cache = new ContactResponseCache(true, 1000, 600000, new SimpleMeterRegistry());
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void invalidateAddressesDropsOnlyThatContact() {
+        getAddress("first", "contact-a", "address-1");
+        getAddress("first", "contact-a", "address-2");
+        getAddress("first", "contact-b", "address-3");
+        getAddress("second", "contact-a", "address-1");
+        assertEquals(4, loads.get());
+
+        committed(() -> cache.invalidateAddressesAfterCommit("first", "contact-a"));
+
+        getAddress("first", "contact-a", "address-1");
+        getAddress("first", "contact-a", "address-2");
+        getAddress("first", "contact-b", "address-3");
+        getAddress("second", "contact-a", "address-1");
+        assertEquals(6, loads.get());
+    }
+
+    @Test
+    void putAddressAfterInvalidate() {
+        getAddress("first", "contact-a", "address-1");
+        committed(() -> cache.invalidateContactAfterCommit("first", "contact-a"));
+
+        AddressResponse updated = AddressResponse.builder().id("address-1").country("Malaysia").build();
+        committed(() -> cache.putAddressAfterCommit("first", "contact-a", updated));
+
+        assertEquals(Optional.of(updated), getAddress("first", "contact-a", "address-1"));
+        assertEquals(1, loads.get());
+    }
+
+    private Optional<AddressResponse> getAddress(String username, String contactId, String addressId) {
+        return cache.getAddress(username, contactId, addressId, () -> {
+            loads.incrementAndGet();
+            return Optional.of(AddressResponse.builder().id(addressId).country("Indonesia").build());
+        });
+    }
+
+    //runs the change as if its transaction just committed
+    private static void committed(Runnable change) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            change.run();
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -8,16 +8,20 @@ import chandraprasetyo.restful.repository.AddressRepository;
 import chandraprasetyo.restful.repository.ContactRepository;
 import chandraprasetyo.restful.repository.UserRepository;
 import chandraprasetyo.restful.security.BCrypt;
+import chandraprasetyo.restful.support.ResetCachesExtension;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.UUID;
@@ -32,6 +36,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.
 @SpringBootTest
 @AutoConfigureMockMvc
 @Slf4j
+@ExtendWith(ResetCachesExtension.class)
 class AddressControllerTest {
 
     @Autowired
@@ -49,6 +54,9 @@ class AddressControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @BeforeEach
     void setUp() {
         addressRepository.deleteAll();
@@ -75,6 +83,55 @@ class AddressControllerTest {
         contactRepository.save(contact);
     }
 
+    @Test
+    void contactAddressesFollowChanges() throws Exception {
+        //Contact.addresses is in the second level cache, no change may leave it stale
+        assertEquals(0, contactAddresses().size());
+
+        CreateAddressRequest request = new CreateAddressRequest();
+        request.setCountry("Indonesia");
+        mockMvc.perform(
+                post("/api/contacts/test/addresses")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+        List<String> ids = contactAddresses();
+        assertEquals(1, ids.size());
+
+        mockMvc.perform(
+                post("/api/contacts/test/addresses/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(UpsertAddressRequest.builder().country("Malaysia").build())))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+        assertEquals(2, contactAddresses().size());
+
+        mockMvc.perform(
+                delete("/api/contacts/test/addresses/" + ids.get(0))
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+        List<String> left = contactAddresses();
+        assertEquals(1, left.size());
+        assertFalse(left.contains(ids.get(0)));
+    }
+
+    private List<String> contactAddresses() {
+        return new TransactionTemplate(transactionManager).execute(status -> contactRepository.findById("test").orElseThrow()
+                .getAddresses().stream()
+                .map(Address::getId)
+                .toList());
+    }
+
     @Test
     void createAddressBadRequest() throws Exception {
         CreateAddressRequest request = new CreateAddressRequest();
@@ -186,6 +243,42 @@ class AddressControllerTest {
         });
     }
 
+    @Test
+    void getAddressIdsIgnoreCase() throws Exception {
+        Contact contact = contactRepository.findById("test").orElseThrow();
+
+        Address address = new Address();
+        address.setId(UUID.randomUUID().toString());
+        address.setContact(contact);
+        address.setCountry("Indonesia");
+        addressRepository.save(address);
+
+        mockMvc.perform(
+                get("/api/contacts/TEST/addresses/" + address.getId().toUpperCase())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<AddressResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(address.getId(), response.getData().getId());
+        });
+
+        UpdateAddressRequest request = new UpdateAddressRequest();
+        request.setCountry("Malaysia");
+        mockMvc.perform(
+                put("/api/contacts/Test/addresses/" + address.getId().toUpperCase())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+        assertEquals("Malaysia", addressRepository.findById(address.getId()).orElseThrow().getCountry());
+    }
+
     @Test
     void updateAddressBadRequest() throws Exception {
         UpdateAddressRequest request = new UpdateAddressRequest();
@@ -360,5 +453,342 @@ class AddressControllerTest {
         });
     }
 
+    @Test
+    void upsertAddressesBulk() throws Exception {
+        Contact contact = contactRepository.findById("test").orElseThrow();
+        Address address = new Address();
+        address.setId("existing");
+        address.setContact(contact);
+        address.setCountry("Indonesia");
+        address.setCity("Jakarta");
+        addressRepository.save(address);
+
+        List<UpsertAddressRequest> requests = List.of(
+                UpsertAddressRequest.builder().id("existing").country("Malaysia").city("Kuala Lumpur").build(),
+                UpsertAddressRequest.builder().country("Singapore").build(),
+                UpsertAddressRequest.builder().id("unknown").country("Thailand").build(),
+                UpsertAddressRequest.builder().country("").build(),
+                UpsertAddressRequest.builder().id("existing").country("Vietnam").build()
+        );
+
+        mockMvc.perform(
+                post("/api/contacts/test/addresses/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<BulkItemResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(5, response.getData().size());
+            assertEquals("existing", response.getData().get(0).getId());
+            assertNotNull(response.getData().get(1).getId());
+            //an id is never taken from the client, unknown ones are not found
+            assertNull(response.getData().get(2).getId());
+            assertEquals("Address is not found", response.getData().get(2).getErrors());
+            assertNotNull(response.getData().get(3).getErrors());
+            //duplicate id
+            assertNotNull(response.getData().get(4).getErrors());
+        });
+
+        assertEquals(2, addressRepository.count());
+        assertFalse(addressRepository.existsById("unknown"));
+        Address updated = addressRepository.findById("existing").orElseThrow();
+        assertEquals("Malaysia", updated.getCountry());
+        assertEquals("Kuala Lumpur", updated.getCity());
+    }
+
+    @Test
+    void upsertAddressesBulkAddressOfOtherContact() throws Exception {
+        Contact other = new Contact();
+        other.setId("other");
+        other.setUser(userRepository.findById("test").orElseThrow());
+        other.setFirstName("budi");
+        contactRepository.save(other);
+
+        Address address = new Address();
+        address.setId("other-address");
+        address.setContact(other);
+        address.setCountry("Indonesia");
+        addressRepository.save(address);
+
+        List<UpsertAddressRequest> requests = List.of(UpsertAddressRequest.builder().id("other-address").country("Malaysia").build());
+
+        mockMvc.perform(
+                post("/api/contacts/test/addresses/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<BulkItemResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Address is not found", response.getData().get(0).getErrors());
+        });
+
+        Address unchanged = addressRepository.findById("other-address").orElseThrow();
+        assertEquals("Indonesia", unchanged.getCountry());
+        assertEquals("other", unchanged.getContact().getId());
+    }
+
+    @Test
+    void upsertAddressesBulkContactNotFound() throws Exception {
+        List<UpsertAddressRequest> requests = List.of(UpsertAddressRequest.builder().country("Indonesia").build());
+
+        mockMvc.perform(
+                post("/api/contacts/salah/addresses/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isNotFound()
+        );
+        assertEquals(0, addressRepository.count());
+    }
+
+    @Test
+    void cachedResponsesFollowChanges() throws Exception {
+        assertEquals(0, listAddresses().size());
+
+        CreateAddressRequest createRequest = new CreateAddressRequest();
+        createRequest.setCity("Jakarta");
+        createRequest.setCountry("Indonesia");
+        String content = mockMvc.perform(
+                post("/api/contacts/test/addresses")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(createRequest))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+        String addressId = objectMapper.readValue(content, new TypeReference<WebResponse<AddressResponse>>() {
+        }).getData().getId();
+        assertEquals(1, listAddresses().size());
+
+        UpdateAddressRequest updateRequest = new UpdateAddressRequest();
+        updateRequest.setCity("Bandung");
+        updateRequest.setCountry("Indonesia");
+        mockMvc.perform(
+                put("/api/contacts/test/addresses/" + addressId)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(updateRequest))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+        assertEquals("Bandung", listAddresses().get(0).getCity());
+        mockMvc.perform(
+                get("/api/contacts/test/addresses/" + addressId)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<AddressResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Bandung", response.getData().getCity());
+        });
+
+        mockMvc.perform(
+                delete("/api/contacts/test/addresses/" + addressId)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+        assertEquals(0, listAddresses().size());
+        mockMvc.perform(
+                get("/api/contacts/test/addresses/" + addressId)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isNotFound()
+        );
+    }
+
+    @Test
+    void listAddressesNotModified() throws Exception {
+        Contact contact = contactRepository.findById("test").orElseThrow();
+        Address address = new Address();
+        address.setId(UUID.randomUUID().toString());
+        address.setContact(contact);
+        address.setCountry("Indonesia");
+        addressRepository.save(address);
+
+        String listEtag = mockMvc.perform(
+                get("/api/contacts/test/addresses")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk(),
+                header().exists("ETag")
+        ).andReturn().getResponse().getHeader("ETag");
+        String addressEtag = mockMvc.perform(
+                get("/api/contacts/test/addresses/" + address.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk(),
+                header().exists("ETag")
+        ).andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(
+                get("/api/contacts/test/addresses")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+                        .header("If-None-Match", listEtag)
+        ).andExpectAll(
+                status().isNotModified()
+        );
+        mockMvc.perform(
+                get("/api/contacts/test/addresses/" + address.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+                        .header("If-None-Match", addressEtag)
+        ).andExpectAll(
+                status().isNotModified()
+        );
+
+        //the update statement bumps the version, both ETags change
+        UpdateAddressRequest request = new UpdateAddressRequest();
+        request.setCountry("Malaysia");
+        mockMvc.perform(
+                put("/api/contacts/test/addresses/" + address.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+        mockMvc.perform(
+                get("/api/contacts/test/addresses")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+                        .header("If-None-Match", listEtag)
+        ).andExpectAll(
+                status().isOk()
+        );
+        mockMvc.perform(
+                get("/api/contacts/test/addresses/" + address.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+                        .header("If-None-Match", addressEtag)
+        ).andExpectAll(
+                status().isOk()
+        );
+    }
 
-}
\ No newline at end of file
+    @Test
+    void updateAddressIfMatch() throws Exception {
+        Contact contact = contactRepository.findById("test").orElseThrow();
+        Address address = new Address();
+        address.setId(UUID.randomUUID().toString());
+        address.setContact(contact);
+        address.setCountry("Indonesia");
+        addressRepository.save(address);
+
+        String etag = mockMvc.perform(
+                get("/api/contacts/test/addresses/" + address.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getHeader("ETag");
+
+        UpdateAddressRequest request = new UpdateAddressRequest();
+        request.setCountry("Malaysia");
+        String content = objectMapper.writeValueAsString(request);
+
+        //first update with the ETag wins, the second one still has the old version
+        mockMvc.perform(
+                put("/api/contacts/test/addresses/" + address.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(content)
+                        .header("X-API-TOKEN", "test")
+                        .header("If-Match", etag)
+        ).andExpectAll(
+                status().isOk()
+        );
+        mockMvc.perform(
+                put("/api/contacts/test/addresses/" + address.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(content)
+                        .header("X-API-TOKEN", "test")
+                        .header("If-Match", etag)
+        ).andExpectAll(
+                status().isPreconditionFailed()
+        );
+        assertEquals(1L, addressRepository.findById(address.getId()).orElseThrow().getVersion());
+
+        mockMvc.perform(
+                put("/api/contacts/test/addresses/" + address.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(content)
+                        .header("X-API-TOKEN", "test")
+                        .header("If-Match", "*")
+        ).andExpectAll(
+                status().isOk()
+        );
+        mockMvc.perform(
+                put("/api/contacts/test/addresses/" + address.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(content)
+                        .header("X-API-TOKEN", "test")
+                        .header("If-Match", "W/\"v2\"")
+        ).andExpectAll(
+                status().isPreconditionFailed()
+        );
+        mockMvc.perform(
+                put("/api/contacts/test/addresses/missing")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(content)
+                        .header("X-API-TOKEN", "test")
+                        .header("If-Match", etag)
+        ).andExpectAll(
+                status().isNotFound()
+        );
+    }
+
+    @Test
+    void listAddressesOrderedById() throws Exception {
+        Contact contact = contactRepository.findById("test").orElseThrow();
+        for (String id : List.of("address-c", "address-a", "address-b")) {
+            Address address = new Address();
+            address.setId(id);
+            address.setContact(contact);
+            address.setCountry("Indonesia");
+            addressRepository.save(address);
+        }
+
+        assertEquals(List.of("address-a", "address-b", "address-c"),
+                listAddresses().stream().map(AddressResponse::getId).toList());
+    }
+
+    private List<AddressResponse> listAddresses() throws Exception {
+        String content = mockMvc.perform(
+                get("/api/contacts/test/addresses")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<List<AddressResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        return response.getData();
+    }
+}
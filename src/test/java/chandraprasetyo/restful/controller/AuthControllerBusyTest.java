@@ -0,0 +1,112 @@
+package chandraprasetyo.restful.controller;
+
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.LoginUserRequest;
+import chandraprasetyo.restful.model.RegisterUserRequest;
+import chandraprasetyo.restful.repository.UserRepository;
+import chandraprasetyo.restful.security.BCrypt;
+import chandraprasetyo.restful.security.PasswordHasher;
+import chandraprasetyo.restful.support.ResetCachesExtension;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * One hashing thread and no queue: while it hashes, login and register answer 503 at once instead of waiting.
+ */
+@SpringBootTest(properties = {
+        "security.bcrypt.pool-size=1",
+        "security.bcrypt.queue-capacity=0"
+})
+@AutoConfigureMockMvc
+@ExtendWith(ResetCachesExtension.class)
+class AuthControllerBusyTest {
+
+    //a hash at this cost takes seconds, far longer than a rejected request may take
+    private static final int SLOW_LOG_ROUNDS = 15;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        userRepository.deleteAll();
+
+        User user = new User();
+        user.setName("Test");
+        user.setUsername("test");
+        user.setPassword(BCrypt.hashpw("rahasia", BCrypt.gensalt(4)));
+        userRepository.save(user);
+    }
+
+    @Test
+    void loginAndRegisterWhileHasherBusy() throws Exception {
+        //checking against a hash of the slow cost keeps the only thread busy, the result does not matter
+        String slowHash = BCrypt.gensalt(SLOW_LOG_ROUNDS) + ".".repeat(31);
+        CompletableFuture<Boolean> busy = CompletableFuture.supplyAsync(() -> passwordHasher.check("rahasia", slowHash));
+        Gauge active = meterRegistry.get("executor.active").tag("name", "bcrypt").gauge();
+        while (active.value() < 1) {
+            assertFalse(busy.isDone(), "hash finished before the pool was seen busy");
+            Thread.sleep(1);
+        }
+
+        LoginUserRequest login = new LoginUserRequest();
+        login.setUsername("test");
+        login.setPassword("rahasia");
+        long start = System.nanoTime();
+        mockMvc.perform(
+                post("/api/auth/login")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(login))
+        ).andExpectAll(
+                status().isServiceUnavailable()
+        );
+
+        RegisterUserRequest register = new RegisterUserRequest();
+        register.setUsername("other");
+        register.setPassword("rahasia");
+        register.setName("Other");
+        mockMvc.perform(
+                post("/api/users")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(register))
+        ).andExpectAll(
+                status().isServiceUnavailable()
+        );
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        //both answered while the slow hash was still running
+        assertFalse(busy.isDone(), "requests waited for the hash, took " + millis + " ms");
+        assertFalse(userRepository.existsById("other"));
+        assertFalse(busy.get());
+    }
+}
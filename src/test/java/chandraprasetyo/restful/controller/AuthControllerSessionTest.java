@@ -0,0 +1,120 @@
+package chandraprasetyo.restful.controller;
+
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.LoginUserRequest;
+import chandraprasetyo.restful.model.TokenResponse;
+import chandraprasetyo.restful.model.WebResponse;
+import chandraprasetyo.restful.repository.UserRepository;
+import chandraprasetyo.restful.repository.UserSessionRepository;
+import chandraprasetyo.restful.security.BCrypt;
+import chandraprasetyo.restful.support.ResetCachesExtension;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = "auth.token.mode=SESSION")
+@AutoConfigureMockMvc
+@Slf4j
+@ExtendWith(ResetCachesExtension.class)
+class AuthControllerSessionTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSessionRepository userSessionRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        userSessionRepository.deleteAll();
+        userRepository.deleteAll();
+
+        User user = new User();
+        user.setName("Test");
+        user.setUsername("test");
+        user.setPassword(BCrypt.hashpw("rahasia", BCrypt.gensalt()));
+        userRepository.save(user);
+    }
+
+    @Test
+    void loginManySessions() throws Exception {
+        String first = login();
+        String second = login();
+        assertNotEquals(first, second);
+        assertEquals(2, userSessionRepository.count());
+
+        //users row is not used for the token
+        User userDb = userRepository.findById("test").orElse(null);
+        assertNotNull(userDb);
+        assertNull(userDb.getToken());
+
+        getCurrentUser(first).andExpect(status().isOk());
+        getCurrentUser(second).andExpect(status().isOk());
+    }
+
+    @Test
+    void logoutOnlyCurrentSession() throws Exception {
+        String first = login();
+        String second = login();
+
+        mockMvc.perform(
+                delete("/api/auth/logout")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", first)
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        getCurrentUser(first).andExpect(status().isUnauthorized());
+        getCurrentUser(second).andExpect(status().isOk());
+        assertEquals(1, userSessionRepository.count());
+    }
+
+    private String login() throws Exception {
+        LoginUserRequest request = new LoginUserRequest();
+        request.setUsername("test");
+        request.setPassword("rahasia");
+
+        String content = mockMvc.perform(
+                post("/api/auth/login")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<TokenResponse> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        return response.getData().getToken();
+    }
+
+    private ResultActions getCurrentUser(String token) throws Exception {
+        return mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", token)
+        );
+    }
+
+}
@@ -2,15 +2,18 @@ package chandraprasetyo.restful.controller;
 
 import chandraprasetyo.restful.entity.User;
 import chandraprasetyo.restful.model.LoginUserRequest;
+import chandraprasetyo.restful.model.RegisterUserRequest;
 import chandraprasetyo.restful.model.TokenResponse;
 import chandraprasetyo.restful.model.WebResponse;
 import chandraprasetyo.restful.repository.UserRepository;
 import chandraprasetyo.restful.security.BCrypt;
+import chandraprasetyo.restful.support.ResetCachesExtension;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -27,6 +30,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.
 @SpringBootTest
 @AutoConfigureMockMvc
 @Slf4j
+@ExtendWith(ResetCachesExtension.class)
 class AuthControllerTest {
 
     @Autowired
@@ -64,6 +68,45 @@ class AuthControllerTest {
         });
     }
 
+    @Test
+    void loginSuccessAfterRegisterUnknownUsername() throws Exception{
+        LoginUserRequest request = new LoginUserRequest();
+        request.setUsername("test");
+        request.setPassword("rahasia");
+
+        //remembered as unknown
+        mockMvc.perform(
+                post("/api/auth/login")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpectAll(
+                status().isUnauthorized()
+        );
+
+        RegisterUserRequest register = new RegisterUserRequest();
+        register.setUsername("test");
+        register.setPassword("rahasia");
+        register.setName("Test");
+        mockMvc.perform(
+                post("/api/users")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(register))
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        mockMvc.perform(
+                post("/api/auth/login")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpectAll(
+                status().isOk()
+        );
+    }
+
     @Test
     void loginFailedWrongPassword() throws Exception{
         User user = new User();
@@ -91,6 +134,46 @@ class AuthControllerTest {
         });
     }
     
+    @Test
+    void loginFailedTooManyAttempts() throws Exception{
+        User user = new User();
+        user.setName("test");
+        user.setUsername("test");
+        user.setPassword(BCrypt.hashpw("test", BCrypt.gensalt(4)));
+        userRepository.save(user);
+
+        LoginUserRequest request = new LoginUserRequest();
+        request.setUsername("test");
+        request.setPassword("rahasia");
+
+        //5 attempts allowed per username
+        for (int i = 0; i < 5; i++) {
+            mockMvc.perform(
+                    post("/api/auth/login")
+                            .accept(MediaType.APPLICATION_JSON)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request))
+            ).andExpectAll(
+                    status().isUnauthorized()
+            );
+        }
+
+        //even the right password is rejected now, without checking it
+        request.setPassword("test");
+        mockMvc.perform(
+                post("/api/auth/login")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpectAll(
+                status().isTooManyRequests()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNotNull(response.getErrors());
+        });
+    }
+
     @Test
     void loginSuccess() throws Exception{
         User user = new User();
@@ -127,6 +210,34 @@ class AuthControllerTest {
         });
     }
 
+    @Test
+    void loginSuccessRehashOutdatedPassword() throws Exception{
+        User user = new User();
+        user.setName("test");
+        user.setUsername("test");
+        user.setPassword(BCrypt.hashpw("rahasia", BCrypt.gensalt(4)));
+        userRepository.save(user);
+
+        LoginUserRequest request = new LoginUserRequest();
+        request.setUsername("test");
+        request.setPassword("rahasia");
+
+        mockMvc.perform(
+                post("/api/auth/login")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            //password stored with cost 4 is upgraded to the configured cost
+            User userDb = userRepository.findById("test").orElse(null);
+            assertNotNull(userDb);
+            assertTrue(userDb.getPassword().startsWith("$2a$10$"));
+            assertTrue(BCrypt.checkpw("rahasia", userDb.getPassword()));
+        });
+    }
+
     @Test
     void logoutFailed() throws Exception {
         mockMvc.perform(
@@ -173,4 +284,45 @@ class AuthControllerTest {
         });
     }
 
+    @Test
+    void logoutInvalidateCachedSession() throws Exception {
+        User user = new User();
+        user.setUsername("test");
+        user.setName("Test");
+        user.setPassword(BCrypt.hashpw("rahasia", BCrypt.gensalt()));
+        user.setToken("testToken");
+        user.setTokenExpiredAt(System.currentTimeMillis() + 10000000000000L);
+        userRepository.save(user);
+
+        //first request put the session in cache
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "testToken")
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        mockMvc.perform(
+                delete("/api/auth/logout")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "testToken")
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        //token must not be served from cache anymore
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "testToken")
+        ).andExpectAll(
+                status().isUnauthorized()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNotNull(response.getErrors());
+        });
+    }
+
 }
\ No newline at end of file
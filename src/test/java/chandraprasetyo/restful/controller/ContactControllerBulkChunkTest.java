@@ -0,0 +1,108 @@
+package chandraprasetyo.restful.controller;
+
+import chandraprasetyo.restful.entity.Contact;
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.BulkItemResponse;
+import chandraprasetyo.restful.model.CreateContactRequest;
+import chandraprasetyo.restful.model.WebResponse;
+import chandraprasetyo.restful.repository.AddressRepository;
+import chandraprasetyo.restful.repository.ContactRepository;
+import chandraprasetyo.restful.repository.UserRepository;
+import chandraprasetyo.restful.security.BCrypt;
+import chandraprasetyo.restful.support.ResetCachesExtension;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Bulk import where a later chunk fails after the earlier ones are committed.
+ */
+@SpringBootTest(properties = "contact.bulk.chunk-size=2")
+@AutoConfigureMockMvc
+@ExtendWith(ResetCachesExtension.class)
+class ContactControllerBulkChunkTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @SpyBean
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+
+        User user = new User();
+        user.setUsername("test");
+        user.setPassword(BCrypt.hashpw("test", BCrypt.gensalt(4)));
+        user.setName("test");
+        user.setToken("test");
+        user.setTokenExpiredAt(System.currentTimeMillis() + 1000000000L);
+        userRepository.save(user);
+    }
+
+    @Test
+    void createContactsBulkChunkFails() throws Exception {
+        List<CreateContactRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(CreateContactRequest.builder().firstName("Chandra " + i).build());
+        }
+        //second chunk (items 2 and 3) fails, the first and the third are saved
+        doThrow(new DataIntegrityViolationException("test"))
+                .when(contactRepository).saveAll(argThat((Iterable<Contact> chunk) ->
+                        StreamSupport.stream(chunk.spliterator(), false).anyMatch(contact -> contact.getFirstName().equals("Chandra 2"))));
+
+        mockMvc.perform(
+                post("/api/contacts/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<BulkItemResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(5, response.getData().size());
+            for (int i : new int[]{0, 1, 4}) {
+                assertNotNull(response.getData().get(i).getId());
+                assertTrue(contactRepository.existsById(response.getData().get(i).getId()));
+            }
+            for (int i : new int[]{2, 3}) {
+                assertNull(response.getData().get(i).getId());
+                assertNotNull(response.getData().get(i).getErrors());
+            }
+        });
+        assertEquals(3, contactRepository.count());
+    }
+}
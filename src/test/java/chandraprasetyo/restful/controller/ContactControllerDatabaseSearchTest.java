@@ -0,0 +1,181 @@
+package chandraprasetyo.restful.controller;
+
+import chandraprasetyo.restful.entity.Contact;
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.ContactResponse;
+import chandraprasetyo.restful.model.CreateContactRequest;
+import chandraprasetyo.restful.model.WebResponse;
+import chandraprasetyo.restful.repository.AddressRepository;
+import chandraprasetyo.restful.repository.ContactRepository;
+import chandraprasetyo.restful.repository.UserRepository;
+import chandraprasetyo.restful.security.BCrypt;
+import chandraprasetyo.restful.support.ResetCachesExtension;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Contact search straight from the database, without the in-memory index.
+ */
+@SpringBootTest(properties = "contact.search.index.enabled=false")
+@AutoConfigureMockMvc
+@ExtendWith(ResetCachesExtension.class)
+class ContactControllerDatabaseSearchTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+
+        User user = new User();
+        user.setUsername("test");
+        user.setPassword(BCrypt.hashpw("test", BCrypt.gensalt(4)));
+        user.setName("test");
+        user.setToken("test");
+        user.setTokenExpiredAt(System.currentTimeMillis() + 1000000000L);
+        userRepository.save(user);
+
+        for (int i = 0; i < 25; i++) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName("Chandra " + i);
+            contact.setLastName("Prasetyo");
+            contact.setEmail("chandra" + i + "@example.com");
+            contact.setPhone("0811111");
+            contactRepository.save(contact);
+        }
+    }
+
+    @Test
+    void searchWithOffset() throws Exception {
+        WebResponse<List<ContactResponse>> response = search("page", "2");
+        assertNull(response.getErrors());
+        assertEquals(5, response.getData().size());
+        assertEquals(3, response.getPaging().getTotalPage());
+        assertEquals(2, response.getPaging().getCurrentPage());
+        assertEquals(25, response.getPaging().getTotalElements());
+        assertFalse(response.getPaging().getHasNext());
+    }
+
+    @Test
+    void searchWithoutCount() throws Exception {
+        WebResponse<List<ContactResponse>> response = search("count", "false");
+        assertNull(response.getErrors());
+        assertEquals(10, response.getData().size());
+        assertTrue(response.getPaging().getHasNext());
+        assertNull(response.getPaging().getTotalPage());
+        assertNull(response.getPaging().getTotalElements());
+
+        response = search("count", "false", "page", "2");
+        assertEquals(5, response.getData().size());
+        assertFalse(response.getPaging().getHasNext());
+    }
+
+    @Test
+    void searchCountFollowsCreate() throws Exception {
+        assertEquals(25, search().getPaging().getTotalElements());
+
+        //not counted again, still 25 when a contact is added behind the service
+        Contact contact = new Contact();
+        contact.setId(UUID.randomUUID().toString());
+        contact.setUser(userRepository.findById("test").orElseThrow());
+        contact.setFirstName("Chandra out of band");
+        contactRepository.save(contact);
+        assertEquals(25, search().getPaging().getTotalElements());
+
+        CreateContactRequest request = new CreateContactRequest();
+        request.setFirstName("Chandra new");
+        mockMvc.perform(
+                post("/api/contacts")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        assertEquals(27, search().getPaging().getTotalElements());
+    }
+
+    @Test
+    void searchWithCursor() throws Exception {
+        List<String> ids = new ArrayList<>();
+        String cursor = "";
+        for (int expected : new int[]{10, 10, 5}) {
+            WebResponse<List<ContactResponse>> response = search("cursor", cursor);
+            assertNull(response.getErrors());
+            assertEquals(expected, response.getData().size());
+            response.getData().forEach(contact -> ids.add(contact.getId()));
+            cursor = response.getPaging().getNextCursor();
+        }
+        assertNull(cursor);
+
+        //every contact once, in id order
+        assertEquals(contactRepository.findAll().stream().map(Contact::getId).sorted().toList(), ids);
+    }
+
+    @Test
+    void searchWithInvalidCursor() throws Exception {
+        mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam("cursor", "not base64!")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isBadRequest()
+        );
+    }
+
+    //name=Chandra plus the given name/value pairs
+    private WebResponse<List<ContactResponse>> search(String... params) throws Exception {
+        MockHttpServletRequestBuilder request = get("/api/contacts")
+                .queryParam("name", "Chandra")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("X-API-TOKEN", "test");
+        for (int i = 0; i < params.length; i += 2) {
+            request.queryParam(params[i], params[i + 1]);
+        }
+
+        String content = mockMvc.perform(request).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        return objectMapper.readValue(content, new TypeReference<>() {
+        });
+    }
+}
@@ -0,0 +1,150 @@
+package chandraprasetyo.restful.controller;
+
+import chandraprasetyo.restful.entity.Contact;
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.ContactResponse;
+import chandraprasetyo.restful.model.CreateContactRequest;
+import chandraprasetyo.restful.model.WebResponse;
+import chandraprasetyo.restful.repository.AddressRepository;
+import chandraprasetyo.restful.repository.ContactRepository;
+import chandraprasetyo.restful.repository.UserRepository;
+import chandraprasetyo.restful.security.BCrypt;
+import chandraprasetyo.restful.support.ResetCachesExtension;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Search index holding at most 20 contacts, a user with more is searched in the database.
+ */
+@SpringBootTest(properties = "contact.search.index.maximum-size=20")
+@AutoConfigureMockMvc
+@ExtendWith(ResetCachesExtension.class)
+class ContactControllerIndexLimitTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+
+        user = new User();
+        user.setUsername("test");
+        user.setPassword(BCrypt.hashpw("test", BCrypt.gensalt(4)));
+        user.setName("test");
+        user.setToken("test");
+        user.setTokenExpiredAt(System.currentTimeMillis() + 1000000000L);
+        userRepository.save(user);
+    }
+
+    @Test
+    void searchUserLargerThanIndex() throws Exception {
+        saveContacts(25);
+        double misses = indexMisses();
+
+        for (int i = 0; i < 3; i++) {
+            WebResponse<List<ContactResponse>> response = search();
+            assertNull(response.getErrors());
+            assertEquals(10, response.getData().size());
+            assertEquals(25, response.getPaging().getTotalElements());
+        }
+
+        //counted once, then not even looked up again: never loaded, never kept
+        assertEquals(0, indexedUsers());
+        assertEquals(misses + 1, indexMisses());
+    }
+
+    @Test
+    void searchUserGrowingLargerThanIndex() throws Exception {
+        saveContacts(19);
+        assertEquals(19, search().getPaging().getTotalElements());
+        assertEquals(1, indexedUsers());
+
+        for (int i = 0; i < 2; i++) {
+            CreateContactRequest request = new CreateContactRequest();
+            request.setFirstName("Chandra new " + i);
+            mockMvc.perform(
+                    post("/api/contacts")
+                            .accept(MediaType.APPLICATION_JSON)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request))
+                            .header("X-API-TOKEN", "test")
+            ).andExpectAll(
+                    status().isOk()
+            );
+        }
+
+        //dropped with the 21st contact, the database answers
+        assertEquals(0, indexedUsers());
+        assertEquals(21, search().getPaging().getTotalElements());
+        assertEquals(0, indexedUsers());
+    }
+
+    private void saveContacts(int count) {
+        for (int i = 0; i < count; i++) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName("Chandra " + i);
+            contactRepository.save(contact);
+        }
+    }
+
+    private double indexedUsers() {
+        return meterRegistry.get("cache.size").tag("cache", "contact-search").gauge().value();
+    }
+
+    private double indexMisses() {
+        return meterRegistry.get("cache.gets").tag("cache", "contact-search").tag("result", "miss").functionCounter().count();
+    }
+
+    private WebResponse<List<ContactResponse>> search() throws Exception {
+        String content = mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam("name", "Chandra")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        return objectMapper.readValue(content, new TypeReference<>() {
+        });
+    }
+}
@@ -1,26 +1,36 @@
 package chandraprasetyo.restful.controller;
 
+import chandraprasetyo.restful.entity.Address;
 import chandraprasetyo.restful.entity.Contact;
 import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.BulkItemResponse;
 import chandraprasetyo.restful.model.ContactResponse;
 import chandraprasetyo.restful.model.CreateContactRequest;
 import chandraprasetyo.restful.model.UpdateContactRequest;
 import chandraprasetyo.restful.model.WebResponse;
+import chandraprasetyo.restful.repository.AddressRepository;
 import chandraprasetyo.restful.repository.ContactRepository;
 import chandraprasetyo.restful.repository.UserRepository;
 import chandraprasetyo.restful.security.BCrypt;
+import chandraprasetyo.restful.support.ResetCachesExtension;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,9 +40,10 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.*;
 
-@SpringBootTest
+@SpringBootTest(properties = "contact.bulk.max-items=5")
 @AutoConfigureMockMvc
 @Slf4j
+@ExtendWith(ResetCachesExtension.class)
 class ContactControllerTest {
 
     @Autowired
@@ -41,6 +52,9 @@ class ContactControllerTest {
     @Autowired
     private ContactRepository contactRepository;
 
+    @Autowired
+    private AddressRepository addressRepository;
+
     @Autowired
     private UserRepository userRepository;
 
@@ -49,6 +63,7 @@ class ContactControllerTest {
 
     @BeforeEach
     void setUp() {
+        addressRepository.deleteAll();
         contactRepository.deleteAll();
         userRepository.deleteAll();
 
@@ -174,6 +189,39 @@ class ContactControllerTest {
             });
         }
 
+    @Test
+    void getContactIdIgnoresCase() throws Exception {
+        User user = userRepository.findById("test").orElseThrow();
+
+        Contact contact = new Contact();
+        contact.setId(UUID.randomUUID().toString());
+        contact.setUser(user);
+        contact.setFirstName("chandra");
+        contactRepository.save(contact);
+
+        //ids are bytes now, the path is lowercased like the old _ci collation matched it
+        mockMvc.perform(
+                get("/api/contacts/" + contact.getId().toUpperCase())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ContactResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(contact.getId(), response.getData().getId());
+        });
+
+        mockMvc.perform(
+                delete("/api/contacts/" + contact.getId().toUpperCase())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+        assertFalse(contactRepository.existsById(contact.getId()));
+    }
+
     @Test
     void updateContactBadRequest() throws Exception {
         UpdateContactRequest request = new UpdateContactRequest();
@@ -323,6 +371,39 @@ class ContactControllerTest {
         });
     }
 
+    @Test
+    void searchIndexPagesInIdOrder() throws Exception{
+        User user = userRepository.findById("test").orElseThrow();
+
+        for (int i = 0; i < 35; i++) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName("Chandra " + i);
+            contactRepository.save(contact);
+        }
+        List<String> all = contactRepository.findAll().stream().map(Contact::getId).sorted().toList();
+
+        //every page is the right slice of the id order, the total counts every match
+        List<String> ids = new ArrayList<>();
+        for (int page = 0; page < 4; page++) {
+            String content = mockMvc.perform(
+                    get("/api/contacts")
+                            .queryParam("name", "Chandra")
+                            .queryParam("page", String.valueOf(page))
+                            .accept(MediaType.APPLICATION_JSON)
+                            .header("X-API-TOKEN", "test")
+            ).andExpectAll(
+                    status().isOk()
+            ).andReturn().getResponse().getContentAsString();
+            WebResponse<List<ContactResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+            });
+            assertEquals(35, response.getPaging().getTotalElements());
+            response.getData().forEach(contact -> ids.add(contact.getId()));
+        }
+        assertEquals(all, ids);
+    }
+
     @Test
     void searchSuccess() throws Exception{
         User user = userRepository.findById("test").orElseThrow();
@@ -498,6 +579,644 @@ class ContactControllerTest {
         }
     }
 
+    @Test
+    void searchIndexFollowsUpdateAndDelete() throws Exception {
+        User user = userRepository.findById("test").orElseThrow();
 
+        Contact contact = new Contact();
+        contact.setId(UUID.randomUUID().toString());
+        contact.setUser(user);
+        contact.setFirstName("chandra");
+        contact.setLastName("prasetyo");
+        contact.setEmail("chandra@example.com");
+        contact.setPhone("0811111");
+        contactRepository.save(contact);
+
+        //first search loads the index
+        assertEquals(1, searchByName("CHANDRA").size());
+
+        UpdateContactRequest request = new UpdateContactRequest();
+        request.setFirstName("Budi");
+        request.setLastName("Nugraha");
+        request.setEmail("budi@example.com");
+        request.setPhone("0819");
+        mockMvc.perform(
+                put("/api/contacts/" + contact.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        assertEquals(0, searchByName("chandra").size());
+        List<ContactResponse> found = searchByName("ugra");
+        assertEquals(1, found.size());
+        assertEquals("Nugraha", found.get(0).getLastName());
+        //shorter than a trigram, answered by the database
+        assertEquals(1, searchByName("Bu").size());
+
+        mockMvc.perform(
+                delete("/api/contacts/" + contact.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        assertEquals(0, searchByName("ugra").size());
+    }
+
+    @Test
+    void searchIgnoresAccentsAndMatchesWildcardsLiterally() throws Exception {
+        User user = userRepository.findById("test").orElseThrow();
+        for (String firstName : new String[]{"José", "Jose", "Diskon 100%", "Diskon 1000", "a_b", "axb"}) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName(firstName);
+            contactRepository.save(contact);
+        }
+
+        //index, like utf8mb4_0900_ai_ci: both spellings, any case.
+        //the database path ignores accents only on MySQL, the test database compares them
+        assertEquals(2, searchByName("jose").size());
+        assertEquals(2, searchByName("JOSÉ").size());
+
+        //% and _ are plain characters, in the index and in the database
+        assertEquals(List.of("Diskon 100%"), searchByName("00%").stream().map(ContactResponse::getFirstName).toList());
+        assertEquals(List.of("Diskon 100%"), searchByName("0%").stream().map(ContactResponse::getFirstName).toList());
+        assertEquals(List.of("a_b"), searchByName("_").stream().map(ContactResponse::getFirstName).toList());
+    }
+
+    @Test
+    void searchWithCursor() throws Exception {
+        User user = userRepository.findById("test").orElseThrow();
+        for (int i = 0; i < 25; i++) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName("Chandra " + i);
+            contact.setLastName("Prasetyo");
+            contact.setEmail("chandra" + i + "@example.com");
+            contact.setPhone("0811111");
+            contactRepository.save(contact);
+        }
+
+        Set<String> seen = new HashSet<>();
+        String cursor = "";
+        for (int expected : new int[]{10, 10, 5}) {
+            WebResponse<List<ContactResponse>> response = searchWithCursor("Chandra", cursor);
+            assertNull(response.getErrors());
+            assertEquals(expected, response.getData().size());
+            response.getData().forEach(contact -> assertTrue(seen.add(contact.getId())));
+            cursor = response.getPaging().getNextCursor();
+        }
+        assertNull(cursor);
+        assertEquals(25, seen.size());
+    }
+
+    @Test
+    void searchWithCursorSkipsDeletedWindow() throws Exception {
+        User user = userRepository.findById("test").orElseThrow();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName("Chandra " + i);
+            contactRepository.save(contact);
+            ids.add(contact.getId());
+        }
+        Collections.sort(ids);
+
+        WebResponse<List<ContactResponse>> response = searchWithCursor("Chandra", "");
+        assertEquals(10, response.getData().size());
+
+        //the whole second window is deleted behind the search index
+        contactRepository.deleteAllById(ids.subList(10, 20));
+
+        response = searchWithCursor("Chandra", response.getPaging().getNextCursor());
+        assertEquals(ids.subList(20, 25), response.getData().stream().map(ContactResponse::getId).toList());
+        assertNull(response.getPaging().getNextCursor());
+    }
+
+    @Test
+    void searchWithoutCount() throws Exception {
+        User user = userRepository.findById("test").orElseThrow();
+        for (int i = 0; i < 25; i++) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName("Chandra " + i);
+            contact.setLastName("Prasetyo");
+            contactRepository.save(contact);
+        }
+
+        for (int page : new int[]{0, 1, 2}) {
+            String content = mockMvc.perform(
+                    get("/api/contacts")
+                            .queryParam("name", "chandra")
+                            .queryParam("count", "false")
+                            .queryParam("page", String.valueOf(page))
+                            .accept(MediaType.APPLICATION_JSON)
+                            .header("X-API-TOKEN", "test")
+            ).andExpectAll(
+                    status().isOk()
+            ).andReturn().getResponse().getContentAsString();
+
+            WebResponse<List<ContactResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(page < 2 ? 10 : 5, response.getData().size());
+            assertEquals(page < 2, response.getPaging().getHasNext());
+            assertNull(response.getPaging().getTotalElements());
+        }
+    }
+
+    private WebResponse<List<ContactResponse>> searchWithCursor(String name, String cursor) throws Exception {
+        String content = mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam("name", name)
+                        .queryParam("cursor", cursor)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        return objectMapper.readValue(content, new TypeReference<>() {
+        });
+    }
+
+    @Test
+    void createContactsBulk() throws Exception {
+        List<CreateContactRequest> requests = List.of(
+                CreateContactRequest.builder().firstName("Chandra").email("chandra@example.com").build(),
+                CreateContactRequest.builder().firstName("").email("salah").build(),
+                CreateContactRequest.builder().firstName("Budi").build()
+        );
+
+        mockMvc.perform(
+                post("/api/contacts/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<BulkItemResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(3, response.getData().size());
+            assertNotNull(response.getData().get(0).getId());
+            assertNull(response.getData().get(0).getErrors());
+            assertNull(response.getData().get(1).getId());
+            assertNotNull(response.getData().get(1).getErrors());
+            assertEquals(1, response.getData().get(1).getIndex());
+            assertNotNull(response.getData().get(2).getId());
+
+            assertTrue(contactRepository.existsById(response.getData().get(0).getId()));
+            assertTrue(contactRepository.existsById(response.getData().get(2).getId()));
+        });
+        assertEquals(2, contactRepository.count());
+        assertEquals(1, searchByName("budi").size());
+    }
+
+    @Test
+    void createContactsBulkInvalidItem() throws Exception {
+        String json = "[" + objectMapper.writeValueAsString(CreateContactRequest.builder().firstName("Chandra").build())
+                + ", {\"firstName\": {\"salah\": 1}}, null, "
+                + objectMapper.writeValueAsString(CreateContactRequest.builder().firstName("Budi").build()) + "]";
+
+        mockMvc.perform(
+                post("/api/contacts/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<BulkItemResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            //like the NDJSON body, only the bad items fail
+            assertEquals(4, response.getData().size());
+            assertNotNull(response.getData().get(0).getId());
+            assertNull(response.getData().get(1).getId());
+            assertNotNull(response.getData().get(1).getErrors());
+            assertNull(response.getData().get(2).getId());
+            assertNotNull(response.getData().get(2).getErrors());
+            assertNotNull(response.getData().get(3).getId());
+        });
+        assertEquals(2, contactRepository.count());
+    }
+
+    @Test
+    void createContactsBulkBrokenJson() throws Exception {
+        String json = "[" + objectMapper.writeValueAsString(CreateContactRequest.builder().firstName("Chandra").build())
+                + ", {\"firstName\": \"Budi\" "
+                + objectMapper.writeValueAsString(CreateContactRequest.builder().firstName("Joko").build()) + "]";
+
+        mockMvc.perform(
+                post("/api/contacts/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<BulkItemResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            //the end of the broken item is unknown, nothing after it is read
+            assertEquals(2, response.getData().size());
+            assertNotNull(response.getData().get(0).getId());
+            assertNull(response.getData().get(1).getId());
+            assertNotNull(response.getData().get(1).getErrors());
+        });
+        assertEquals(1, contactRepository.count());
+    }
+
+    @Test
+    void createContactsBulkNotArray() throws Exception {
+        mockMvc.perform(
+                post("/api/contacts/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(CreateContactRequest.builder().firstName("Chandra").build()))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isBadRequest()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNotNull(response.getErrors());
+        });
+        assertEquals(0, contactRepository.count());
+    }
+
+    @Test
+    void createContactsBulkJsonTooManyItems() throws Exception {
+        List<CreateContactRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            requests.add(CreateContactRequest.builder().firstName("Chandra " + i).build());
+        }
+
+        mockMvc.perform(
+                post("/api/contacts/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<BulkItemResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(6, response.getData().size());
+            assertNotNull(response.getData().get(5).getErrors());
+        });
+        assertEquals(5, contactRepository.count());
+    }
+
+    @Test
+    void createContactsBulkNdjson() throws Exception {
+        String ndjson = objectMapper.writeValueAsString(CreateContactRequest.builder().firstName("Chandra").build()) + "\n"
+                + objectMapper.writeValueAsString(CreateContactRequest.builder().firstName("Budi").build()) + "\n"
+                + objectMapper.writeValueAsString(CreateContactRequest.builder().firstName("Joko").build()) + "\n";
+
+        mockMvc.perform(
+                post("/api/contacts/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<BulkItemResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(3, response.getData().size());
+            response.getData().forEach(item -> assertNotNull(item.getId()));
+        });
+        assertEquals(3, contactRepository.count());
+    }
+
+    @Test
+    void createContactsBulkNdjsonBrokenLine() throws Exception {
+        String ndjson = objectMapper.writeValueAsString(CreateContactRequest.builder().firstName("Chandra").build()) + "\n"
+                + "{\"firstName\": \"Budi\"\n"
+                + objectMapper.writeValueAsString(CreateContactRequest.builder().firstName("Joko").build()) + "\n";
+
+        mockMvc.perform(
+                post("/api/contacts/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<BulkItemResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            //the ids of the saved lines come back, a retry does not have to guess
+            assertEquals(3, response.getData().size());
+            assertNotNull(response.getData().get(0).getId());
+            assertNull(response.getData().get(1).getId());
+            assertNotNull(response.getData().get(1).getErrors());
+            assertNotNull(response.getData().get(2).getId());
+        });
+        assertEquals(2, contactRepository.count());
+    }
+
+    @Test
+    void createContactsBulkTooManyItems() throws Exception {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            ndjson.append(objectMapper.writeValueAsString(CreateContactRequest.builder().firstName("Chandra " + i).build())).append("\n");
+        }
+
+        mockMvc.perform(
+                post("/api/contacts/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson.toString())
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<BulkItemResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            //max-items is 5, one error entry for everything after
+            assertEquals(6, response.getData().size());
+            assertEquals(5, response.getData().get(5).getIndex());
+            assertNull(response.getData().get(5).getId());
+            assertNotNull(response.getData().get(5).getErrors());
+        });
+        assertEquals(5, contactRepository.count());
+    }
+
+    @Test
+    void getContactWithAddresses() throws Exception {
+        User user = userRepository.findById("test").orElseThrow();
+        Contact contact = new Contact();
+        contact.setId(UUID.randomUUID().toString());
+        contact.setUser(user);
+        contact.setFirstName("Chandra");
+        contactRepository.save(contact);
+
+        Address address = new Address();
+        address.setId(UUID.randomUUID().toString());
+        address.setContact(contact);
+        address.setCity("Jakarta");
+        address.setCountry("Indonesia");
+        addressRepository.save(address);
+
+        mockMvc.perform(
+                get("/api/contacts/" + contact.getId())
+                        .queryParam("embed", "addresses")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ContactResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(1, response.getData().getAddresses().size());
+            assertEquals(address.getId(), response.getData().getAddresses().get(0).getId());
+            assertEquals("Jakarta", response.getData().getAddresses().get(0).getCity());
+        });
+
+        //not asked, not there
+        mockMvc.perform(
+                get("/api/contacts/" + contact.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> assertFalse(result.getResponse().getContentAsString().contains("addresses")));
+
+        mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam("embed", "addresses")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<ContactResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(1, response.getData().size());
+            assertEquals(1, response.getData().get(0).getAddresses().size());
+        });
+
+        mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam("embed", "phones")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isBadRequest()
+        );
+    }
+
+    @Test
+    void cachedContactFollowsUpdateAndDelete() throws Exception {
+        User user = userRepository.findById("test").orElseThrow();
+        Contact contact = new Contact();
+        contact.setId(UUID.randomUUID().toString());
+        contact.setUser(user);
+        contact.setFirstName("Chandra");
+        contactRepository.save(contact);
+
+        assertEquals("Chandra", getContact(contact.getId()).getFirstName());
+
+        UpdateContactRequest request = new UpdateContactRequest();
+        request.setFirstName("Budi");
+        mockMvc.perform(
+                put("/api/contacts/" + contact.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+        assertEquals("Budi", getContact(contact.getId()).getFirstName());
+
+        mockMvc.perform(
+                delete("/api/contacts/" + contact.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+        mockMvc.perform(
+                get("/api/contacts/" + contact.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isNotFound()
+        );
+    }
+
+    @Test
+    void getContactNotModified() throws Exception {
+        User user = userRepository.findById("test").orElseThrow();
+        Contact contact = new Contact();
+        contact.setId(UUID.randomUUID().toString());
+        contact.setUser(user);
+        contact.setFirstName("Chandra");
+        contactRepository.save(contact);
+
+        String etag = mockMvc.perform(
+                get("/api/contacts/" + contact.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk(),
+                header().exists("ETag")
+        ).andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(
+                get("/api/contacts/" + contact.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+                        .header("If-None-Match", etag)
+        ).andExpectAll(
+                status().isNotModified(),
+                content().string("")
+        );
+
+        UpdateContactRequest request = new UpdateContactRequest();
+        request.setFirstName("Budi");
+        mockMvc.perform(
+                put("/api/contacts/" + contact.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        //new version, new body
+        mockMvc.perform(
+                get("/api/contacts/" + contact.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+                        .header("If-None-Match", etag)
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            assertNotEquals(etag, result.getResponse().getHeader("ETag"));
+            WebResponse<ContactResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Budi", response.getData().getFirstName());
+            assertFalse(result.getResponse().getContentAsString().contains("version"));
+        });
+    }
+
+    @Test
+    void exportContacts() throws Exception {
+        User user = userRepository.findById("test").orElseThrow();
+        for (int i = 0; i < 3; i++) {
+            Contact contact = new Contact();
+            contact.setId("contact-" + i);
+            contact.setUser(user);
+            contact.setFirstName("Chandra " + i);
+            contactRepository.save(contact);
+
+            //contact-0 has no address, contact-1 one, contact-2 two
+            for (int j = 0; j < i; j++) {
+                Address address = new Address();
+                address.setId("address-" + i + "-" + j);
+                address.setContact(contact);
+                address.setCountry("Indonesia");
+                addressRepository.save(address);
+            }
+        }
+
+        List<String> lines = export(false);
+        assertEquals(3, lines.size());
+        for (int i = 0; i < 3; i++) {
+            assertFalse(lines.get(i).contains("addresses"));
+            ContactResponse contact = objectMapper.readValue(lines.get(i), ContactResponse.class);
+            assertEquals("contact-" + i, contact.getId());
+            assertEquals("Chandra " + i, contact.getFirstName());
+        }
+
+        lines = export(true);
+        assertEquals(3, lines.size());
+        for (int i = 0; i < 3; i++) {
+            ContactResponse contact = objectMapper.readValue(lines.get(i), ContactResponse.class);
+            assertEquals("contact-" + i, contact.getId());
+            assertEquals(i, contact.getAddresses().size());
+            for (int j = 0; j < i; j++) {
+                assertEquals("address-" + i + "-" + j, contact.getAddresses().get(j).getId());
+                assertEquals("Indonesia", contact.getAddresses().get(j).getCountry());
+            }
+        }
+    }
+
+    @Test
+    void exportContactsUnauthorized() throws Exception {
+        mockMvc.perform(
+                get("/api/contacts/export")
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .header("X-API-TOKEN", "wrong")
+        ).andExpectAll(
+                status().isUnauthorized()
+        );
+    }
+
+    private List<String> export(boolean addresses) throws Exception {
+        MvcResult result = mockMvc.perform(
+                get("/api/contacts/export")
+                        .queryParam("addresses", String.valueOf(addresses))
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                request().asyncStarted()
+        ).andReturn();
+
+        String content = mockMvc.perform(asyncDispatch(result))
+                .andExpectAll(
+                        status().isOk(),
+                        content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                ).andReturn().getResponse().getContentAsString();
+        return content.lines().toList();
+    }
+
+    private ContactResponse getContact(String contactId) throws Exception {
+        String content = mockMvc.perform(
+                get("/api/contacts/" + contactId)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<ContactResponse> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        return response.getData();
+    }
+
+    private List<ContactResponse> searchByName(String name) throws Exception {
+        String content = mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam("name", name)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<List<ContactResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        return response.getData();
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,305 @@
+package chandraprasetyo.restful.controller;
+
+import chandraprasetyo.restful.cache.ContactResponseCache;
+import chandraprasetyo.restful.entity.Address;
+import chandraprasetyo.restful.entity.Contact;
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.CreateAddressRequest;
+import chandraprasetyo.restful.model.CreateContactRequest;
+import chandraprasetyo.restful.model.LoginUserRequest;
+import chandraprasetyo.restful.model.UpdateAddressRequest;
+import chandraprasetyo.restful.model.UpdateContactRequest;
+import chandraprasetyo.restful.repository.AddressRepository;
+import chandraprasetyo.restful.repository.ContactRepository;
+import chandraprasetyo.restful.repository.UserRepository;
+import chandraprasetyo.restful.support.ResetCachesExtension;
+import chandraprasetyo.restful.support.StatementCounter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * SQL statements run per endpoint, once the session of the caller is cached.
+ * A failure here means a change added queries to a request, raise the budget only on purpose.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=chandraprasetyo.restful.support.StatementCounter")
+@AutoConfigureMockMvc
+@ExtendWith(ResetCachesExtension.class)
+class QueryBudgetTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ContactResponseCache contactResponseCache;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${auth.login-limit.username.capacity:5}")
+    private int usernameCapacity;
+
+    @Value("${spring.jpa.properties.hibernate.cache.use_query_cache:false}")
+    private boolean queryCache;
+
+    private Contact contact;
+
+    private Address address;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+
+        User user = new User();
+        user.setUsername("test");
+        user.setPassword("test");
+        user.setName("test");
+        user.setToken("test");
+        user.setTokenExpiredAt(System.currentTimeMillis() + 1000000000L);
+        userRepository.save(user);
+
+        contact = new Contact();
+        contact.setId(UUID.randomUUID().toString());
+        contact.setUser(user);
+        contact.setFirstName("Chandra");
+        contact.setLastName("Prasetyo");
+        contact.setEmail("chandra@example.com");
+        contact.setPhone("0811111");
+        contactRepository.save(contact);
+
+        address = new Address();
+        address.setId(UUID.randomUUID().toString());
+        address.setContact(contact);
+        address.setStreet("Jalan");
+        address.setCity("Jakarta");
+        address.setProvince("DKI");
+        address.setCountry("Indonesia");
+        address.setPostalCode("12345");
+        addressRepository.save(address);
+
+        //session and search index loaded, not part of the budget of the requests below
+        statements(get("/api/users/current"));
+        statements(get("/api/contacts").queryParam("name", "chandra"));
+    }
+
+    @Test
+    void getContact() throws Exception {
+        assertEquals(1, statements(get("/api/contacts/" + contact.getId())));
+    }
+
+    @Test
+    void searchContacts() throws Exception {
+        assertEquals(1, statements(get("/api/contacts").queryParam("name", "chandra")));
+    }
+
+    @Test
+    void getContactAndAddressesFromResponseCache() throws Exception {
+        assertEquals(1, statements(get("/api/contacts/" + contact.getId())));
+        assertEquals(1, statements(get("/api/contacts/" + contact.getId() + "/addresses")));
+        assertEquals(1, statements(get("/api/contacts/" + contact.getId() + "/addresses/" + address.getId())));
+        assertEquals(0, statements(get("/api/contacts/" + contact.getId())));
+        assertEquals(0, statements(get("/api/contacts/" + contact.getId() + "/addresses")));
+        assertEquals(0, statements(get("/api/contacts/" + contact.getId() + "/addresses/" + address.getId())));
+    }
+
+    @Test
+    void getContactAndAddressesFromQueryCache() throws Exception {
+        assumeTrue(queryCache, "query cache disabled");
+
+        statements(get("/api/contacts/" + contact.getId()));
+        statements(get("/api/contacts/" + contact.getId() + "/addresses"));
+        statements(get("/api/contacts/" + contact.getId() + "/addresses/" + address.getId()));
+        //served by the query cache, not by the responses cached above
+        contactResponseCache.invalidateAll();
+        assertEquals(0, statements(get("/api/contacts/" + contact.getId())));
+        assertEquals(0, statements(get("/api/contacts/" + contact.getId() + "/addresses")));
+        assertEquals(0, statements(get("/api/contacts/" + contact.getId() + "/addresses/" + address.getId())));
+
+        //any change of the table makes the cached results stale
+        UpdateAddressRequest request = new UpdateAddressRequest();
+        request.setCountry("Malaysia");
+        statements(put("/api/contacts/" + contact.getId() + "/addresses/" + address.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)));
+        assertEquals(1, statements(get("/api/contacts/" + contact.getId() + "/addresses")));
+    }
+
+    @Test
+    void getContactWithAddresses() throws Exception {
+        assertEquals(2, statements(get("/api/contacts/" + contact.getId()).queryParam("embed", "addresses")));
+    }
+
+    @Test
+    void searchContactsWithAddresses() throws Exception {
+        assertEquals(2, statements(get("/api/contacts").queryParam("embed", "addresses")));
+
+        //a full page of contacts with two addresses each, still one query for all the addresses
+        for (int i = 0; i < 9; i++) {
+            Contact other = new Contact();
+            other.setId(UUID.randomUUID().toString());
+            other.setUser(contact.getUser());
+            other.setFirstName("Budi " + i);
+            contactRepository.save(other);
+            for (int j = 0; j < 2; j++) {
+                Address otherAddress = new Address();
+                otherAddress.setId(UUID.randomUUID().toString());
+                otherAddress.setContact(other);
+                otherAddress.setCountry("Indonesia");
+                addressRepository.save(otherAddress);
+            }
+        }
+        //the total of a full page is counted once, then taken from the count cache
+        statements(get("/api/contacts"));
+
+        assertEquals(2, statements(get("/api/contacts").queryParam("embed", "addresses")));
+    }
+
+    @Test
+    void createContact() throws Exception {
+        CreateContactRequest request = new CreateContactRequest();
+        request.setFirstName("Budi");
+        assertEquals(1, statements(post("/api/contacts")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request))));
+    }
+
+    @Test
+    void createContactsBulk() throws Exception {
+        List<CreateContactRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            requests.add(CreateContactRequest.builder().firstName("Budi " + i).build());
+        }
+        //one insert statement prepared, rows go out in JDBC batches (120 without batching)
+        assertEquals(1, statements(post("/api/contacts/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(requests))));
+    }
+
+    @Test
+    void updateContact() throws Exception {
+        UpdateContactRequest request = new UpdateContactRequest();
+        request.setFirstName("Budi");
+        assertEquals(2, statements(put("/api/contacts/" + contact.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request))));
+    }
+
+    @Test
+    void deleteContact() throws Exception {
+        addressRepository.deleteAll();
+        assertEquals(2, statements(delete("/api/contacts/" + contact.getId())));
+    }
+
+    @Test
+    void listAddresses() throws Exception {
+        assertEquals(1, statements(get("/api/contacts/" + contact.getId() + "/addresses")));
+    }
+
+    @Test
+    void getAddress() throws Exception {
+        assertEquals(1, statements(get("/api/contacts/" + contact.getId() + "/addresses/" + address.getId())));
+    }
+
+    @Test
+    void createAddress() throws Exception {
+        CreateAddressRequest request = new CreateAddressRequest();
+        request.setCountry("Indonesia");
+        assertEquals(2, statements(post("/api/contacts/" + contact.getId() + "/addresses")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request))));
+    }
+
+    @Test
+    void updateAddress() throws Exception {
+        UpdateAddressRequest request = new UpdateAddressRequest();
+        request.setCountry("Malaysia");
+        assertEquals(1, statements(put("/api/contacts/" + contact.getId() + "/addresses/" + address.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request))));
+    }
+
+    @Test
+    void deleteAddress() throws Exception {
+        assertEquals(1, statements(delete("/api/contacts/" + contact.getId() + "/addresses/" + address.getId())));
+    }
+
+    @Test
+    void loginUnknownUsernameAgain() throws Exception {
+        assertEquals(1, loginStatements("nobody", status().isUnauthorized()));
+        assertEquals(0, loginStatements("nobody", status().isUnauthorized()));
+    }
+
+    @Test
+    void loginRateLimited() throws Exception {
+        for (int i = 0; i < usernameCapacity; i++) {
+            loginStatements("nobody", status().isUnauthorized());
+        }
+        //refused before the username is looked up, not even a transaction is started
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long transactions = statistics.getTransactionCount();
+        assertEquals(0, loginStatements("nobody", status().isTooManyRequests()));
+        assertEquals(transactions, statistics.getTransactionCount());
+    }
+
+    private int loginStatements(String username, ResultMatcher expected) throws Exception {
+        LoginUserRequest request = new LoginUserRequest();
+        request.setUsername(username);
+        request.setPassword("rahasia");
+
+        StatementCounter.reset();
+        mockMvc.perform(post("/api/auth/login")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request))
+        ).andExpectAll(
+                expected
+        );
+        return StatementCounter.count();
+    }
+
+    private int statements(MockHttpServletRequestBuilder request) throws Exception {
+        StatementCounter.reset();
+        mockMvc.perform(request
+                .accept(MediaType.APPLICATION_JSON)
+                .header("X-API-TOKEN", "test")
+        ).andExpectAll(
+                status().is2xxSuccessful()
+        );
+        return StatementCounter.count();
+    }
+}
@@ -0,0 +1,81 @@
+package chandraprasetyo.restful.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdBytesTypeTest {
+
+    @Test
+    void uuidIsSixteenBytes() {
+        UUID uuid = new IdGenerator(IdStrategy.TIME_ORDERED).timeOrdered();
+
+        byte[] bytes = IdBytesType.toBytes(uuid.toString());
+
+        assertEquals(16, bytes.length);
+        assertEquals(uuid.getMostSignificantBits(), java.nio.ByteBuffer.wrap(bytes).getLong());
+        assertEquals(uuid.toString(), IdBytesType.fromBytes(bytes));
+    }
+
+    @Test
+    void legacyIdKeepsItsBytes() {
+        for (String id : List.of("test", "existing", "kontak-ñ", "A".repeat(100))) {
+            byte[] bytes = IdBytesType.toBytes(id);
+
+            assertArrayEquals(id.getBytes(StandardCharsets.UTF_8), bytes);
+            assertEquals(id, IdBytesType.fromBytes(bytes));
+        }
+    }
+
+    @Test
+    void legacyIdOfSixteenBytesIsNotReadAsUuid() {
+        String id = "plan-3-contact-7";
+
+        byte[] bytes = IdBytesType.toBytes(id);
+
+        assertEquals(17, bytes.length);
+        assertEquals(0, bytes[16]);
+        assertEquals(id, IdBytesType.fromBytes(bytes));
+    }
+
+    @Test
+    void upperCaseUuidStaysAsIs() {
+        String id = UUID.randomUUID().toString().toUpperCase();
+
+        byte[] bytes = IdBytesType.toBytes(id);
+
+        assertEquals(36, bytes.length);
+        assertEquals(id, IdBytesType.fromBytes(bytes));
+    }
+
+    @Test
+    void normalizedUpperCaseUuidIsSixteenBytes() {
+        String id = UUID.randomUUID().toString();
+
+        assertArrayEquals(IdBytesType.toBytes(id), IdBytesType.toBytes(IdBytesType.normalize(id.toUpperCase())));
+        assertEquals("legacy-id", IdBytesType.normalize("Legacy-ID"));
+        assertNull(IdBytesType.normalize(null));
+    }
+
+    @Test
+    void orderIsTheOrderOfTheBytes() {
+        List<String> ids = new ArrayList<>(List.of("test", "plan-3-contact-7", "Zeta", "ñ",
+                "ffffffff-0000-7000-8000-000000000000", "00000000-0000-7000-8000-000000000000"));
+        for (int i = 0; i < 20; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+
+        List<String> byOrder = new ArrayList<>(ids);
+        byOrder.sort(IdBytesType.ORDER);
+        List<String> byBytes = new ArrayList<>(ids);
+        byBytes.sort((left, right) -> Arrays.compareUnsigned(IdBytesType.toBytes(left), IdBytesType.toBytes(right)));
+
+        assertEquals(byBytes, byOrder);
+    }
+}
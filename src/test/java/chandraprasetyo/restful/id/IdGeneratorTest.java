@@ -0,0 +1,45 @@
+package chandraprasetyo.restful.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdGeneratorTest {
+
+    @Test
+    void timeOrderedIdsGrow() {
+        IdGenerator idGenerator = new IdGenerator(IdStrategy.TIME_ORDERED);
+        Set<String> ids = new HashSet<>();
+
+        //more than 4096 per ms on a fast machine, the counter overflow is covered too
+        String previous = idGenerator.next();
+        for (int i = 0; i < 100000; i++) {
+            String id = idGenerator.next();
+            assertTrue(id.compareTo(previous) > 0, previous + " then " + id);
+            assertTrue(ids.add(id));
+            previous = id;
+        }
+    }
+
+    @Test
+    void timeOrderedIdIsUuidV7() {
+        long before = System.currentTimeMillis();
+        UUID uuid = UUID.fromString(new IdGenerator(IdStrategy.TIME_ORDERED).next());
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        long millis = uuid.getMostSignificantBits() >>> 16;
+        assertTrue(millis >= before && millis <= System.currentTimeMillis() + 1);
+    }
+
+    @Test
+    void randomIdIsUuidV4() {
+        UUID uuid = UUID.fromString(new IdGenerator(IdStrategy.RANDOM).next());
+
+        assertEquals(4, uuid.version());
+    }
+}
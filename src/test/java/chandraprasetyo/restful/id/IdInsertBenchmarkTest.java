@@ -0,0 +1,100 @@
+package chandraprasetyo.restful.id;
+
+import chandraprasetyo.restful.entity.Contact;
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.repository.AddressRepository;
+import chandraprasetyo.restful.repository.ContactRepository;
+import chandraprasetyo.restful.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contacts inserted per second with random vs time-ordered ids, both stored as 16 bytes by {@link IdBytesType}.
+ * The gap grows with the table, once the primary key index no longer fits in the buffer pool, so use a large ROWS.
+ * It runs on the database of application.properties (MySQL, migrated by Flyway), and deletes every user, contact and address there.
+ * Run with: mvn test -Pbenchmark -Dtest=IdInsertBenchmarkTest
+ */
+@SpringBootTest
+@Tag("benchmark")
+@Slf4j
+class IdInsertBenchmarkTest {
+
+    private static final int ROWS = 200000;
+
+    private static final int CHUNK = 500;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAllInBatch();
+        contactRepository.deleteAllInBatch();
+        userRepository.deleteAll();
+
+        user = new User();
+        user.setUsername("test");
+        user.setPassword("test");
+        user.setName("test");
+        userRepository.save(user);
+    }
+
+    @Test
+    void insertThroughput() {
+        for (IdStrategy strategy : IdStrategy.values()) {
+            //warm up, then an empty table for the measure
+            insert(new IdGenerator(strategy), CHUNK * 10);
+            contactRepository.deleteAllInBatch();
+
+            long start = System.nanoTime();
+            insert(new IdGenerator(strategy), ROWS);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("{} ids: {} contacts in {} ms, {} contacts/s", strategy, ROWS, millis, ROWS * 1000L / Math.max(1, millis));
+
+            contactRepository.deleteAllInBatch();
+        }
+    }
+
+    private void insert(IdGenerator idGenerator, int rows) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int from = 0; from < rows; from += CHUNK) {
+            int count = Math.min(CHUNK, rows - from);
+            transactionTemplate.executeWithoutResult(status -> {
+                User reference = entityManager.getReference(User.class, user.getUsername());
+                for (int i = 0; i < count; i++) {
+                    Contact contact = new Contact();
+                    contact.setId(idGenerator.next());
+                    contact.setUser(reference);
+                    contact.setFirstName("Chandra");
+                    contact.setEmail("chandra@example.com");
+                    entityManager.persist(contact);
+                }
+                entityManager.flush();
+                entityManager.clear();
+            });
+        }
+    }
+}
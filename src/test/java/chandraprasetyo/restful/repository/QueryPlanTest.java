@@ -0,0 +1,270 @@
+package chandraprasetyo.restful.repository;
+
+import chandraprasetyo.restful.entity.Contact;
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.id.IdBytesType;
+import chandraprasetyo.restful.model.ContactResponse;
+import chandraprasetyo.restful.support.StatementRecorder;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EXPLAIN of the SQL behind every repository query, none may read a whole table (type ALL).
+ * Every repository method is called, the statement Hibernate prepared for it is taken from {@link StatementRecorder}
+ * and explained with the values the call bound, in the order of the placeholders.
+ * The plans, and the values given for the placeholders, are only checked on MySQL with the Flyway migrations applied.
+ * Other dialects render the limits differently (H2 adds {@code offset ?} for the first page), there only the number
+ * of statements each call sends is checked.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=chandraprasetyo.restful.support.StatementRecorder")
+class QueryPlanTest {
+
+    private static final int USERS = 20;
+
+    private static final int CONTACTS_PER_USER = 50;
+
+    private static final long NOW = 1_000_000L;
+
+    private static final String USERNAME = "plan-3";
+
+    private static final String CONTACT_ID = "plan-3-contact-7";
+
+    private static final String ADDRESS_ID = CONTACT_ID + "-address-0";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSessionRepository userSessionRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private boolean mysql;
+
+    @BeforeEach
+    void setUp() {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        mysql = "MySQL".equals(database);
+
+        tearDown();
+
+        //enough rows for the optimizer to prefer the indexes, a tenth of the tokens and sessions expired
+        List<Object[]> users = new ArrayList<>();
+        List<Object[]> sessions = new ArrayList<>();
+        List<Object[]> contacts = new ArrayList<>();
+        List<Object[]> addresses = new ArrayList<>();
+        for (int u = 0; u < USERS; u++) {
+            String username = "plan-" + u;
+            users.add(new Object[]{username, "password", "name", "token-" + u, u % 10 == 0 ? NOW - 1 : NOW + u});
+            for (int t = 0; t < 10; t++) {
+                int n = u * 10 + t;
+                sessions.add(new Object[]{tokenHash(n), username, n % 10 == 0 ? NOW - 1 : NOW + n});
+            }
+            for (int c = 0; c < CONTACTS_PER_USER; c++) {
+                String contactId = username + "-contact-" + c;
+                contacts.add(new Object[]{id(contactId), username, "first " + c, "last " + c, "0811" + c, c + "@example.com"});
+                for (int a = 0; a < 2; a++) {
+                    addresses.add(new Object[]{id(contactId + "-address-" + a), id(contactId), "Jalan", "Jakarta", "DKI", "Indonesia", "12345"});
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into users (username, password, name, token, token_expired_at) values (?, ?, ?, ?, ?)", users);
+        jdbcTemplate.batchUpdate("insert into sessions (token_hash, username, expired_at) values (?, ?, ?)", sessions);
+        jdbcTemplate.batchUpdate("insert into contacts (id, username, first_name, last_name, phone, email, version) values (?, ?, ?, ?, ?, ?, 0)", contacts);
+        jdbcTemplate.batchUpdate("insert into addresses (id, contact_id, street, city, province, country, postal_code, version) values (?, ?, ?, ?, ?, ?, ?, 0)", addresses);
+        if (mysql) {
+            jdbcTemplate.execute("analyze table users, sessions, contacts, addresses");
+        }
+
+        //a cached entity or query result would not send its statement
+        entityManagerFactory.getCache().evictAll();
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from addresses where contact_id in (select id from contacts where username like 'plan-%')");
+        jdbcTemplate.update("delete from contacts where username like 'plan-%'");
+        jdbcTemplate.update("delete from sessions where username like 'plan-%'");
+        jdbcTemplate.update("delete from users where username like 'plan-%'");
+    }
+
+    @Test
+    void contactQueries() {
+        explain(() -> contactRepository.findFirstByUserAndId(user(), CONTACT_ID),
+                params(USERNAME, id(CONTACT_ID), 1));
+        explain(() -> contactRepository.existsByUserAndId(user(), CONTACT_ID),
+                params(USERNAME, id(CONTACT_ID), 1));
+        explain(() -> contactRepository.countByUser(user()),
+                params(USERNAME));
+        explain(() -> contactRepository.findResponseByUserAndId(user(), CONTACT_ID),
+                params(USERNAME, id(CONTACT_ID)));
+        explain(() -> contactRepository.findResponsesByUserAndIdIn(user(), List.of(CONTACT_ID, "plan-3-contact-8", "plan-3-contact-9")),
+                params(USERNAME, id(CONTACT_ID), id("plan-3-contact-8"), id("plan-3-contact-9")));
+        explain(() -> contactRepository.findAllForSearchIndex(user()),
+                params(USERNAME));
+
+        //database search path: filtered page and count, unfiltered deep page and count, cursor scroll
+        explain(() -> contactRepository.findSlice(search(user()), PageRequest.of(0, 10)),
+                params(USERNAME, "%irs%", "%irs%", "%example%", "%0811%", 11));
+        explain(() -> contactRepository.count(search(user())),
+                params(USERNAME, "%irs%", "%irs%", "%example%", "%0811%"));
+        explain(() -> contactRepository.findSlice(owner(user()), PageRequest.of(2, 10)),
+                params(USERNAME, 20, 11));
+        explain(() -> contactRepository.count(owner(user())),
+                params(USERNAME));
+        //the sort key and the key Spring Data adds to keep the order unique are both id
+        explain(() -> contactRepository.findBy(owner(user()), query -> query
+                        .sortBy(Sort.by("id"))
+                        .limit(10)
+                        .scroll(ScrollPosition.forward(Map.of("id", CONTACT_ID)))),
+                params(USERNAME, id(CONTACT_ID), id(CONTACT_ID), id(CONTACT_ID), 11));
+
+        //export, with and without addresses
+        explain(() -> {
+            try (Stream<ContactResponse> contacts = contactRepository.streamAll(user(), false)) {
+                contacts.forEach(contact -> {
+                });
+            }
+        }, params(USERNAME));
+        explain(() -> {
+            try (Stream<ContactResponse> contacts = contactRepository.streamAll(user(), true)) {
+                contacts.forEach(contact -> {
+                });
+            }
+        }, params(USERNAME));
+    }
+
+    @Test
+    void addressQueries() {
+        explain(() -> addressRepository.findFirstByContactAndId(contact(), ADDRESS_ID),
+                params(id(CONTACT_ID), id(ADDRESS_ID), 1));
+        explain(() -> addressRepository.findAllByContact(contact()),
+                params(id(CONTACT_ID)));
+        explain(() -> addressRepository.findAllByContactAndIdIn(contact(), List.of(ADDRESS_ID, CONTACT_ID + "-address-1")),
+                params(id(CONTACT_ID), id(ADDRESS_ID), id(CONTACT_ID + "-address-1")));
+        explain(() -> addressRepository.findResponseByUserAndContactIdAndId(user(), CONTACT_ID, ADDRESS_ID),
+                params(id(CONTACT_ID), USERNAME, id(ADDRESS_ID)));
+        explain(() -> addressRepository.findResponsesByUserAndContactId(user(), CONTACT_ID),
+                params(id(CONTACT_ID), USERNAME));
+        explain(() -> addressRepository.findResponsesByContactIdIn(List.of(CONTACT_ID, "plan-3-contact-8")),
+                params(id(CONTACT_ID), id("plan-3-contact-8")));
+        explain(() -> addressRepository.updateByUserAndContactIdAndId(user(), CONTACT_ID, ADDRESS_ID, 0L,
+                        "Jalan", "Bandung", "Jawa Barat", "Indonesia", "40111"),
+                params("Jalan", "Bandung", "Jawa Barat", "Indonesia", "40111", id(ADDRESS_ID), 0L, 0L, id(CONTACT_ID), USERNAME));
+        explain(() -> addressRepository.existsByContactIdAndId(CONTACT_ID, ADDRESS_ID),
+                params(id(CONTACT_ID), id(ADDRESS_ID), 1));
+        explain(() -> addressRepository.deleteByUserAndContactIdAndId(user(), CONTACT_ID, ADDRESS_ID),
+                params(id(ADDRESS_ID), id(CONTACT_ID), USERNAME));
+    }
+
+    @Test
+    void userAndSessionQueries() {
+        explain(() -> userRepository.findFirstByToken("token-3"),
+                params("token-3", 1));
+        explain(() -> userRepository.findExpiredTokenUsernames(NOW, "", PageRequest.of(0, 500)),
+                params(NOW, "", 500));
+        explain(() -> userRepository.clearExpiredTokens(List.of("plan-0", "plan-1"), NOW),
+                params("plan-0", "plan-1", NOW));
+
+        explain(() -> userSessionRepository.findFirstByTokenHash(tokenHash(31)),
+                params(tokenHash(31), 1));
+        explain(() -> userSessionRepository.deleteExpiredByUser(user(), NOW),
+                params(USERNAME, NOW));
+        explain(() -> userSessionRepository.findExpiredTokenHashes(NOW, "", PageRequest.of(0, 500)),
+                params(NOW, "", 500));
+        explain(() -> userSessionRepository.deleteExpired(List.of(tokenHash(30), tokenHash(40)), NOW),
+                params(tokenHash(30), tokenHash(40), NOW));
+    }
+
+    //references, no statement is sent for them
+    private User user() {
+        return userRepository.getReferenceById(USERNAME);
+    }
+
+    private Contact contact() {
+        return contactRepository.getReferenceById(CONTACT_ID);
+    }
+
+    //same filters as the database search of ContactServiceImpl
+    private static Specification<Contact> owner(User user) {
+        return (root, query, builder) -> builder.equal(root.get("user"), user);
+    }
+
+    private static Specification<Contact> search(User user) {
+        return owner(user).and((root, query, builder) -> builder.and(
+                builder.or(builder.like(root.get("firstName"), "%irs%", '\\'), builder.like(root.get("lastName"), "%irs%", '\\')),
+                builder.like(root.get("email"), "%example%", '\\'),
+                builder.like(root.get("phone"), "%0811%", '\\')));
+    }
+
+    //ids are bound as the bytes stored for them
+    private static byte[] id(String id) {
+        return IdBytesType.toBytes(id);
+    }
+
+    private static String tokenHash(int n) {
+        return String.format("%064d", n);
+    }
+
+    private static Object[] params(Object... values) {
+        return values;
+    }
+
+    //one call, one statement per given params. rolled back, updates and deletes leave the rows for the next call
+    private void explain(Runnable call, Object[]... params) {
+        StatementRecorder.reset();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            call.run();
+            status.setRollbackOnly();
+        });
+
+        List<String> statements = StatementRecorder.statements();
+        assertEquals(params.length, statements.size(), "statements sent: " + statements);
+        if (!mysql) {
+            return;
+        }
+        for (int i = 0; i < statements.size(); i++) {
+            String sql = statements.get(i);
+            assertEquals(params[i].length, sql.chars().filter(c -> c == '?').count(), "values for " + sql);
+
+            List<Map<String, Object>> plan = jdbcTemplate.queryForList("explain " + sql, params[i]);
+            for (Map<String, Object> row : plan) {
+                assertNotEquals("ALL", row.get("type"), "full scan of " + row.get("table") + " in " + sql + "\n" + plan);
+            }
+        }
+    }
+}
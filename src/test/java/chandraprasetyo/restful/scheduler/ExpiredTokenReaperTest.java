@@ -0,0 +1,92 @@
+package chandraprasetyo.restful.scheduler;
+
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.entity.UserSession;
+import chandraprasetyo.restful.repository.AddressRepository;
+import chandraprasetyo.restful.repository.ContactRepository;
+import chandraprasetyo.restful.repository.UserRepository;
+import chandraprasetyo.restful.repository.UserSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "auth.token-reaper.batch-size=2",
+        "auth.token-reaper.batch-delay=0"
+})
+class ExpiredTokenReaperTest {
+
+    @Autowired
+    private ExpiredTokenReaper expiredTokenReaper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSessionRepository userSessionRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        userSessionRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void reapExpiredTokensInBatches() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            saveUser("expired" + i, "expired" + i, now - 1000);
+        }
+        User active = saveUser("active", "active", now + 1000000);
+
+        for (int i = 0; i < 3; i++) {
+            saveSession("expired" + i, active, now - 1000);
+        }
+        saveSession("active", active, now + 1000000);
+
+        assertEquals(8, expiredTokenReaper.reap());
+
+        for (int i = 0; i < 5; i++) {
+            User user = userRepository.findById("expired" + i).orElse(null);
+            assertNotNull(user);
+            assertNull(user.getToken());
+            assertNull(user.getTokenExpiredAt());
+        }
+        assertEquals("active", userRepository.findById("active").orElseThrow().getToken());
+        assertEquals(1, userSessionRepository.count());
+        assertTrue(userSessionRepository.existsById("active"));
+
+        //nothing left to clean
+        assertEquals(0, expiredTokenReaper.reap());
+    }
+
+    private User saveUser(String username, String token, long tokenExpiredAt) {
+        User user = new User();
+        user.setUsername(username);
+        user.setName(username);
+        user.setPassword("password");
+        user.setToken(token);
+        user.setTokenExpiredAt(tokenExpiredAt);
+        return userRepository.save(user);
+    }
+
+    private void saveSession(String tokenHash, User user, long expiredAt) {
+        UserSession session = new UserSession();
+        session.setTokenHash(tokenHash);
+        session.setUser(user);
+        session.setExpiredAt(expiredAt);
+        userSessionRepository.save(session);
+    }
+
+}
@@ -0,0 +1,98 @@
+package chandraprasetyo.restful.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.SecureRandom;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BCryptEngine must give exactly the same results as BCrypt.
+ */
+class BCryptEngineTest {
+
+    private static final List<String> PASSWORDS = List.of(
+            "",
+            "a",
+            "rahasia",
+            "abcdefghijklmnopqrstuvwxyz",
+            "~!@#$%^&*()      ~!@#$%^&*()PNBFRD",
+            "chandra12345",
+            "pässwörd",
+            "密码密码",
+            "emoji 😀 password",
+            "lone \uD83D surrogate",
+            "ÿþý sign extension",
+            // longer than the 72 bytes bcrypt really uses
+            "0123456789012345678901234567890123456789012345678901234567890123456789012345678901234567890123456789"
+    );
+
+    private static final List<String> PREFIXES = List.of("$2a", "$2b", "$2y");
+
+    @Test
+    void hashpwSameAsBCrypt() {
+        SecureRandom random = new SecureRandom();
+        for (String prefix : PREFIXES) {
+            for (int logRounds = 4; logRounds <= 5; logRounds++) {
+                for (String password : PASSWORDS) {
+                    String salt = BCrypt.gensalt(prefix, logRounds, random);
+                    assertEquals(BCrypt.hashpw(password, salt), BCryptEngine.hashpw(password, salt),
+                            "password [" + password + "] salt " + salt);
+                }
+            }
+        }
+    }
+
+    @Test
+    void hashpwSameAsBCryptForLegacyRevisions() {
+        //$2$ and $2x$ cannot be made by gensalt, reuse the salt of a $2a$ one
+        for (String password : PASSWORDS) {
+            String salt = BCrypt.gensalt(4).substring(4);
+            for (String prefix : List.of("$2$", "$2x$")) {
+                if (password.isEmpty() && prefix.equals("$2$")) {
+                    //no NUL terminator in $2$, empty password has no key material at all
+                    continue;
+                }
+                assertEquals(BCrypt.hashpw(password, prefix + salt), BCryptEngine.hashpw(password, prefix + salt),
+                        "password [" + password + "] salt " + prefix + salt);
+            }
+        }
+    }
+
+    @Test
+    void checkpwSameAsBCrypt() {
+        for (String password : PASSWORDS) {
+            String hashed = BCrypt.hashpw(password, BCrypt.gensalt(4));
+
+            assertTrue(BCryptEngine.checkpw(password, hashed));
+            assertFalse(BCryptEngine.checkpw("x" + password, hashed));
+            //past 72 bytes the extra char is ignored, by both
+            assertEquals(BCrypt.checkpw(password + "x", hashed), BCryptEngine.checkpw(password + "x", hashed));
+
+            //tampered hash, last char and length
+            char last = hashed.charAt(hashed.length() - 1);
+            String tampered = hashed.substring(0, hashed.length() - 1) + (last == 'a' ? 'b' : 'a');
+            assertEquals(BCrypt.checkpw(password, tampered), BCryptEngine.checkpw(password, tampered));
+            assertFalse(BCryptEngine.checkpw(password, hashed + "a"));
+            assertFalse(BCryptEngine.checkpw(password, hashed.substring(0, hashed.length() - 1)));
+        }
+    }
+
+    @Test
+    void knownVectors() {
+        assertTrue(BCryptEngine.checkpw("", "$2a$06$DCq7YPn5Rq63x1Lad4cll.TV4S6ytwfsfvkgY8jIucDrjc8deX1s."));
+        assertTrue(BCryptEngine.checkpw("abc", "$2a$06$If6bvum7DFjUnE9p2uDeDu0YHzrHM6tf.iqN8.yx.jNN1ILEf7h0i"));
+        assertFalse(BCryptEngine.checkpw("abd", "$2a$06$If6bvum7DFjUnE9p2uDeDu0YHzrHM6tf.iqN8.yx.jNN1ILEf7h0i"));
+    }
+
+    @Test
+    void invalidSaltSameErrorAsBCrypt() {
+        for (String salt : List.of("$2a$10$tooshort", "$3a$10$...................................", "$2c$10$....................................",
+                "$2a$1$.......................................", "$2a$03$......................")) {
+            assertThrows(IllegalArgumentException.class, () -> BCrypt.hashpw("rahasia", salt), salt);
+            assertThrows(IllegalArgumentException.class, () -> BCryptEngine.hashpw("rahasia", salt), salt);
+        }
+    }
+
+}
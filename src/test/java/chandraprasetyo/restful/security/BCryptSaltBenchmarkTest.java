@@ -0,0 +1,70 @@
+package chandraprasetyo.restful.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Register throughput (salt + hash) with a new SecureRandom per salt vs a shared/thread local one.
+ * Run with: mvn test -Pbenchmark -Dtest=BCryptSaltBenchmarkTest
+ */
+@Tag("benchmark")
+@Slf4j
+class BCryptSaltBenchmarkTest {
+
+    private static final int THREADS = 8;
+
+    private static final int REGISTER_PER_THREAD = 200;
+
+    //low cost so the salt generation is not hidden behind the hashing
+    private static final int LOG_ROUNDS = 4;
+
+    @Test
+    void registerThroughput() throws Exception {
+        ThreadLocal<SecureRandom> threadLocal = ThreadLocal.withInitial(SecureRandom::new);
+        SecureRandom shared = new SecureRandom();
+
+        //warm up
+        run(SecureRandom::new);
+        run(() -> shared);
+        run(threadLocal::get);
+
+        log.info("new SecureRandom per salt : {} register/s", run(SecureRandom::new));
+        log.info("shared SecureRandom       : {} register/s", run(() -> shared));
+        log.info("thread local SecureRandom : {} register/s", run(threadLocal::get));
+    }
+
+    private long run(Supplier<SecureRandom> random) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < REGISTER_PER_THREAD; j++) {
+                        String hashed = BCrypt.hashpw("rahasia", BCrypt.gensalt(LOG_ROUNDS, random.get()));
+                        assertNotNull(hashed);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            return THREADS * REGISTER_PER_THREAD * 1_000_000_000L / elapsed;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
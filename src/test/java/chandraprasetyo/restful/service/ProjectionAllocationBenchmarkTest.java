@@ -0,0 +1,136 @@
+package chandraprasetyo.restful.service;
+
+import chandraprasetyo.restful.entity.Address;
+import chandraprasetyo.restful.entity.Contact;
+import chandraprasetyo.restful.entity.User;
+import chandraprasetyo.restful.model.AddressResponse;
+import chandraprasetyo.restful.model.ContactResponse;
+import chandraprasetyo.restful.repository.AddressRepository;
+import chandraprasetyo.restful.repository.ContactRepository;
+import chandraprasetyo.restful.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bytes allocated per contact get and address list, loading entities vs projecting into responses.
+ * It runs on the database of application.properties (MySQL, migrated by Flyway), the JDBC driver allocates
+ * part of the bytes, so only compare numbers taken on the same database. It deletes every user, contact and address there.
+ * Run with: mvn test -Pbenchmark -Dtest=ProjectionAllocationBenchmarkTest
+ */
+@SpringBootTest
+@Tag("benchmark")
+@Slf4j
+class ProjectionAllocationBenchmarkTest {
+
+    private static final int WARM_UP = 2000;
+
+    private static final int REQUESTS = 5000;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnly;
+
+    private User user;
+
+    private String contactId;
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        user = new User();
+        user.setUsername("test");
+        user.setPassword("test");
+        user.setName("test");
+        userRepository.save(user);
+
+        Contact contact = new Contact();
+        contact.setId(UUID.randomUUID().toString());
+        contact.setUser(user);
+        contact.setFirstName("Chandra");
+        contact.setLastName("Prasetyo");
+        contact.setEmail("chandra@example.com");
+        contact.setPhone("0811111");
+        contactRepository.save(contact);
+        contactId = contact.getId();
+
+        for (int i = 0; i < 5; i++) {
+            Address address = new Address();
+            address.setId(UUID.randomUUID().toString());
+            address.setContact(contact);
+            address.setStreet("Jalan " + i);
+            address.setCity("Jakarta");
+            address.setProvince("DKI");
+            address.setCountry("Indonesia");
+            address.setPostalCode("12345");
+            addressRepository.save(address);
+        }
+    }
+
+    @Test
+    void allocationPerRequest() {
+        Runnable entityGet = () -> readOnly.executeWithoutResult(status -> {
+            Contact contact = contactRepository.findFirstByUserAndId(user, contactId).orElseThrow();
+            assertNotNull(new ContactResponse(contact.getId(), contact.getFirstName(), contact.getLastName(),
+                    contact.getEmail(), contact.getPhone()));
+        });
+        Runnable projectionGet = () -> readOnly.executeWithoutResult(status ->
+                assertNotNull(contactRepository.findResponseByUserAndId(user, contactId).orElseThrow()));
+
+        Runnable entityList = () -> readOnly.executeWithoutResult(status -> {
+            Contact contact = contactRepository.findFirstByUserAndId(user, contactId).orElseThrow();
+            List<AddressResponse> addresses = addressRepository.findAllByContact(contact).stream()
+                    .map(address -> new AddressResponse(address.getId(), address.getStreet(), address.getCity(),
+                            address.getProvince(), address.getCountry(), address.getPostalCode()))
+                    .toList();
+            assertEquals(5, addresses.size());
+        });
+        Runnable projectionList = () -> readOnly.executeWithoutResult(status ->
+                assertEquals(5, addressRepository.findResponsesByUserAndContactId(user, contactId).size()));
+
+        log.info("contact get, entity     : {} bytes/request", measure(entityGet));
+        log.info("contact get, projection : {} bytes/request", measure(projectionGet));
+        log.info("address list, entity     : {} bytes/request", measure(entityList));
+        log.info("address list, projection : {} bytes/request", measure(projectionList));
+    }
+
+    private long measure(Runnable request) {
+        for (int i = 0; i < WARM_UP; i++) {
+            request.run();
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threadMXBean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < REQUESTS; i++) {
+            request.run();
+        }
+        return (threadMXBean.getCurrentThreadAllocatedBytes() - before) / REQUESTS;
+    }
+}
@@ -0,0 +1,31 @@
+package chandraprasetyo.restful.support;
+
+import chandraprasetyo.restful.cache.ContactCountCache;
+import chandraprasetyo.restful.cache.ContactResponseCache;
+import chandraprasetyo.restful.cache.NegativeLookupCache;
+import chandraprasetyo.restful.cache.SessionCache;
+import chandraprasetyo.restful.search.ContactSearchIndex;
+import chandraprasetyo.restful.security.LoginRateLimiter;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * Empties every in-memory cache of the application before each test, the tests delete and insert rows behind
+ * their back. Runs before the {@code @BeforeEach} of the test class. A new cache goes here, not into the tests.
+ * Use with {@code @ExtendWith(ResetCachesExtension.class)} on a {@code @SpringBootTest}.
+ */
+public class ResetCachesExtension implements BeforeEachCallback {
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        ApplicationContext applicationContext = SpringExtension.getApplicationContext(context);
+        applicationContext.getBean(SessionCache.class).invalidateAll();
+        applicationContext.getBean(NegativeLookupCache.class).invalidateAll();
+        applicationContext.getBean(ContactResponseCache.class).invalidateAll();
+        applicationContext.getBean(ContactCountCache.class).invalidateAll();
+        applicationContext.getBean(ContactSearchIndex.class).invalidateAll();
+        applicationContext.getBean(LoginRateLimiter.class).resetAll();
+    }
+}
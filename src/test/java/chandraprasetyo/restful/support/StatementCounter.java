@@ -0,0 +1,28 @@
+package chandraprasetyo.restful.support;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the SQL statements Hibernate prepares. Enable it with
+ * {@code spring.jpa.properties.hibernate.session_factory.statement_inspector=chandraprasetyo.restful.support.StatementCounter}.
+ */
+public class StatementCounter implements StatementInspector {
+
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.incrementAndGet();
+        return sql;
+    }
+
+    public static void reset() {
+        COUNT.set(0);
+    }
+
+    public static int count() {
+        return COUNT.get();
+    }
+}